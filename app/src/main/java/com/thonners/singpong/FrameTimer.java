@@ -0,0 +1,68 @@
+package com.thonners.singpong;
+
+import android.util.Log;
+
+/**
+ * Class to measure how long a section of the render loop takes.
+ * Call start() and stop() around the section every frame. Every <reportInterval> frames the mean and
+ * worst times are logged, as a warning if the mean is over budget. Nothing is allocated between reports.
+ *
+ * @author Thonners
+ * @since 18/10/26
+ * @version 1.0
+ */
+public class FrameTimer {
+
+    private static final String LOG_TAG = "FrameTimer" ;
+
+    private String name ;
+    private long budgetNanos ;
+    private int reportInterval ;
+
+    private long startNanos ;
+    private long totalNanos = 0 ;
+    private long worstNanos = 0 ;
+    private int frames = 0 ;
+
+    /**
+     * FrameTimer constructor.
+     * @param name              Name of the section being timed, for the log.
+     * @param budgetNanos       Mean time per frame above which a warning is logged.
+     * @param reportInterval    Number of frames between each report.
+     */
+    public FrameTimer(String name, long budgetNanos, int reportInterval) {
+        this.name = name ;
+        this.budgetNanos = budgetNanos ;
+        this.reportInterval = reportInterval ;
+    }
+
+    /**
+     * Method to mark the start of the section.
+     */
+    public void start() {
+        startNanos = System.nanoTime() ;
+    }
+
+    /**
+     * Method to mark the end of the section, and report if due.
+     */
+    public void stop() {
+        long elapsed = System.nanoTime() - startNanos ;
+        totalNanos += elapsed ;
+        if (elapsed > worstNanos) {
+            worstNanos = elapsed ;
+        }
+        if (++frames >= reportInterval) {
+            long meanNanos = totalNanos / frames ;
+            String report = name + ": mean " + meanNanos / 1000 + " us, worst " + worstNanos / 1000 + " us over " + frames + " frames" ;
+            if (meanNanos > budgetNanos) {
+                Log.w(LOG_TAG, report + " (over budget of " + budgetNanos / 1000 + " us)");
+            } else {
+                Log.d(LOG_TAG, report);
+            }
+            totalNanos = 0 ;
+            worstNanos = 0 ;
+            frames = 0 ;
+        }
+    }
+}
@@ -10,9 +10,14 @@ import android.support.v7.widget.Toolbar;
 import android.view.View;
 import android.view.Menu;
 import android.view.MenuItem;
+import android.widget.TextView;
+
+import java.util.Locale;
 
 public class MainActivity extends AppCompatActivity {
 
+    private TextView statsView ;
+
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
@@ -27,6 +32,25 @@ public class MainActivity extends AppCompatActivity {
                 play() ;
             }
         });
+
+        statsView = (TextView) findViewById(R.id.home_stats) ;
+    }
+
+    @Override
+    protected void onResume() {
+        super.onResume();
+        // Show the players' stats. The totals are read from the store's index, so this is quick however many matches have been played.
+        MatchStatsStore.getInstance(getFilesDir()).readStats(new MatchStatsStore.StatsListener() {
+            @Override
+            public void onStats(final MatchStatsStore.Stats stats) {
+                runOnUiThread(new Runnable() {
+                    @Override
+                    public void run() {
+                        showStats(stats);
+                    }
+                });
+            }
+        });
     }
 
     @Override
@@ -51,6 +75,28 @@ public class MainActivity extends AppCompatActivity {
         return super.onOptionsItemSelected(item);
     }
 
+    /**
+     * Method to show the players' stats on the home screen.
+     * @param stats Totals of every match played, or null if they couldn't be loaded.
+     */
+    private void showStats(MatchStatsStore.Stats stats) {
+        if (stats == null || stats.getMatches() == 0) {
+            statsView.setText(R.string.stats_none);
+            return ;
+        }
+        String summary = String.format(Locale.getDefault(), getResources().getString(R.string.stats_summary),
+                stats.getMatches(),
+                stats.getGoals(PongPitchSurfaceView.PLAYER_ONE),
+                stats.getGoals(PongPitchSurfaceView.PLAYER_TWO),
+                stats.getRallies(PongPitchSurfaceView.PLAYER_ONE) + stats.getRallies(PongPitchSurfaceView.PLAYER_TWO)) ;
+        if (stats.getMaxPitch(PongPitchSurfaceView.PLAYER_ONE) > 0) {
+            summary += "\n" + String.format(Locale.getDefault(), getResources().getString(R.string.stats_pitch_range),
+                    stats.getMinPitch(PongPitchSurfaceView.PLAYER_ONE),
+                    stats.getMaxPitch(PongPitchSurfaceView.PLAYER_ONE)) ;
+        }
+        statsView.setText(summary);
+    }
+
     private void play() {
         Intent playActivity = new Intent(this, PlayActivity.class) ;
         startActivity(playActivity);
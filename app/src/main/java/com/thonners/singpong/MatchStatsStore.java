@@ -0,0 +1,754 @@
+package com.thonners.singpong;
+
+import android.util.Log;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+/**
+ * Class to store each player's statistics across all the matches they've played.
+ *
+ * Every match is appended to a log file as a fixed-width binary record with its own checksum. Totals
+ * for all matches are kept in a small index file alongside the log, so the home screen can show them
+ * without reading the log. All file access happens on a single background thread: appends are
+ * buffered and written together with NIO, followed by the index.
+ *
+ * The store survives the process being killed at any point:
+ * - A partly written record at the end of the log fails its checksum, and is truncated on load. A damaged
+ *   record anywhere else in the log is skipped, so it doesn't take the valid records after it with it.
+ * - The index records how much of the log its totals cover. Any records after that are replayed on load.
+ * - If the log's header is damaged, a new log is started from the index's totals (if the index is intact).
+ * - Files are only replaced by writing a temporary file and renaming it over the old one.
+ *
+ * To stop the log growing forever, it is compacted once it holds COMPACT_THRESHOLD records: all but the
+ * most recent COMPACT_KEEP records are folded into the totals stored in the log's header, and the log is
+ * rewritten. The log header therefore always holds the totals of every match no longer in the log, so
+ * the index can be rebuilt from the log alone if it is ever lost.
+ *
+ * Has no dependency on the Android framework other than logging.
+ *
+ * @author Thonners
+ * @since 18/10/26
+ * @version 1.0
+ */
+public class MatchStatsStore {
+
+    private static final String LOG_TAG = "MatchStatsStore" ;
+
+    private static final String LOG_FILE_NAME = "match_stats.log" ;
+    private static final String INDEX_FILE_NAME = "match_stats.idx" ;
+    private static final String TEMP_SUFFIX = ".tmp" ;
+
+    // File format
+    private static final int LOG_MAGIC = 0x53504c47 ;       // "SPLG"
+    private static final int INDEX_MAGIC = 0x53504958 ;     // "SPIX"
+    private static final int FORMAT_VERSION = 1 ;
+    public static final int PLAYERS = 2 ;
+    static final int RECORD_SIZE = 64 ;     // timestamp (8), 2 x player (24), reserved (4), CRC (4)
+    static final int HEADER_SIZE = 128 ;    // magic (4), version (4), generation (8), totals (88), CRC (4), padding
+    static final int INDEX_SIZE = 128 ;     // magic (4), version (4), generation (8), covered bytes (8), totals (88), CRC (4), padding
+
+    // Buffering and compaction
+    private static final int BUFFERED_RECORDS = 32 ;
+    private static final long FLUSH_DELAY_MS = 1000 ;
+    static final int COMPACT_THRESHOLD = 4096 ;
+    static final int COMPACT_KEEP = 1024 ;
+
+    private static MatchStatsStore instance ;
+
+    private final File logFile ;
+    private final File indexFile ;
+    private final ScheduledExecutorService executor ;
+
+    // Background thread only
+    private FileChannel logChannel ;
+    private long generation ;           // Incremented every time the log is compacted
+    private Totals baseline ;           // Totals of the matches compacted out of the log
+    private Totals totals ;             // Totals of every match
+    private long logSize ;              // Bytes in the log, excluding anything still in writeBuffer
+    private final ByteBuffer writeBuffer = ByteBuffer.allocate(BUFFERED_RECORDS * RECORD_SIZE) ;
+    private final CRC32 crc = new CRC32() ;
+    private ScheduledFuture<?> scheduledFlush ;
+
+    // Copy of the totals for other threads
+    private volatile Stats stats ;
+
+    /**
+     * Method to return the store for a directory, creating it on first use. One store is shared by the whole app.
+     * @param directory Directory for the store's files, e.g. Context.getFilesDir().
+     * @return  The store.
+     */
+    public static synchronized MatchStatsStore getInstance(File directory) {
+        if (instance == null) {
+            instance = new MatchStatsStore(directory) ;
+        }
+        return instance ;
+    }
+
+    /**
+     * MatchStatsStore constructor. The files are loaded on the background thread.
+     * @param directory Directory for the store's files.
+     */
+    MatchStatsStore(File directory) {
+        logFile = new File(directory, LOG_FILE_NAME) ;
+        indexFile = new File(directory, INDEX_FILE_NAME) ;
+        executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, LOG_TAG) ;
+                thread.setDaemon(true);
+                return thread ;
+            }
+        });
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    load();
+                } catch (IOException e) {
+                    Log.e(LOG_TAG, "Couldn't load match stats: " + e.getMessage());
+                    e.printStackTrace();
+                }
+            }
+        });
+    }
+
+    /****************************** Public Methods ************************************************/
+
+    /**
+     * Interface to receive the stats.
+     */
+    public interface StatsListener {
+        /**
+         * Called on the store's background thread.
+         * @param stats Totals of every match, or null if the store couldn't be loaded.
+         */
+        void onStats(Stats stats) ;
+    }
+
+    /**
+     * Method to get the totals of every match played. The listener is called on the store's background thread once the store has loaded.
+     * Reading the totals takes constant time, however many matches have been played.
+     * @param listener  Listener to receive the stats.
+     */
+    public void readStats(final StatsListener listener) {
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                listener.onStats(stats);
+            }
+        });
+    }
+
+    /**
+     * Method to return the most recent totals, without waiting. Can be called from any thread.
+     * @return  Totals of every match, or null if the store hasn't loaded yet.
+     */
+    public Stats getStats() {
+        return stats ;
+    }
+
+    /**
+     * Method to add a match. Returns immediately; the match is written on the background thread, shortly afterwards.
+     * @param match The match to add. Mustn't be changed after it has been added.
+     */
+    public void append(final MatchRecord match) {
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    write(match);
+                } catch (IOException e) {
+                    Log.e(LOG_TAG, "Couldn't write match: " + e.getMessage());
+                    e.printStackTrace();
+                }
+            }
+        });
+    }
+
+    /**
+     * Method to write any buffered matches to disk now, e.g. when the app is paused. Returns immediately.
+     */
+    public void flush() {
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    flushBuffer();
+                } catch (IOException e) {
+                    Log.e(LOG_TAG, "Couldn't flush matches: " + e.getMessage());
+                    e.printStackTrace();
+                }
+            }
+        });
+    }
+
+    /****************************** Background thread ************************************************/
+
+    /**
+     * Method to open the log and work out the totals: from the index if it is up to date, otherwise by
+     * replaying the log on top of the header's totals. Any damaged records at the end of the log are removed.
+     * If the log's header is damaged, the totals are recovered from the index, or failing that start again from zero.
+     */
+    private void load() throws IOException {
+        // Left over from an interrupted write. The files they were replacing are still intact.
+        new File(logFile.getPath() + TEMP_SUFFIX).delete() ;
+        new File(indexFile.getPath() + TEMP_SUFFIX).delete() ;
+
+        if (!readLogHeader() && !recoverFromIndex()) {
+            Log.w(LOG_TAG, "No valid match log or index, so starting a new log.");
+            generation = 1 ;
+            baseline = new Totals() ;
+            writeLog(null, 0) ;
+            indexFile.delete() ;
+        }
+        logChannel = new RandomAccessFile(logFile, "rw").getChannel() ;
+        logSize = logChannel.size() ;
+
+        // Use the index if it matches this log, and only replay the records it doesn't cover
+        long replayFrom = HEADER_SIZE ;
+        totals = baseline.copy() ;
+        ByteBuffer index = readIndex() ;
+        if (index != null && index.getLong(8) == generation) {
+            long covered = index.getLong(16) ;
+            if (isRecordBoundary(covered)) {
+                index.position(24);
+                totals = Totals.read(index) ;
+                replayFrom = covered ;
+            }
+        }
+        boolean replayed = replay(replayFrom) ;
+        if (replayed || replayFrom == HEADER_SIZE) {
+            writeIndex();
+        }
+        publishStats();
+    }
+
+    /**
+     * Method to start a new log from the index's totals, when the log's header is damaged but the index is intact.
+     * Any records in the old log after those the index covers are replayed first. The new log has no records, and
+     * its header holds the recovered totals, in the generation after the index's (so the old index is not used again).
+     * @return  False if the index is missing or damaged too.
+     */
+    private boolean recoverFromIndex() throws IOException {
+        ByteBuffer index = readIndex() ;
+        if (index == null) {
+            return false ;
+        }
+        index.position(24);
+        totals = Totals.read(index) ;
+        if (logFile.exists()) {
+            logChannel = new RandomAccessFile(logFile, "rw").getChannel() ;
+            try {
+                logSize = logChannel.size() ;
+                long covered = index.getLong(16) ;
+                if (isRecordBoundary(covered)) {
+                    replay(covered) ;
+                }
+            } finally {
+                logChannel.close();
+                logChannel = null ;
+            }
+        }
+        Log.w(LOG_TAG, "Match log header is damaged, so starting a new log from the index's totals.");
+        generation = index.getLong(8) + 1 ;
+        baseline = totals.copy() ;
+        writeLog(null, 0) ;
+        return true ;
+    }
+
+    /**
+     * Method to read the index, without checking that it matches the log.
+     * @return  The index, or null if it is missing or damaged.
+     */
+    private ByteBuffer readIndex() throws IOException {
+        ByteBuffer index = readFile(indexFile, INDEX_SIZE) ;
+        if (index == null || index.getInt(0) != INDEX_MAGIC || index.getInt(4) != FORMAT_VERSION
+                || !checksumValid(index, 0, Totals.SIZE + 24)) {
+            return null ;
+        }
+        return index ;
+    }
+
+    /**
+     * Method to check whether an offset in the log is the start (or end) of a record within the current log.
+     */
+    private boolean isRecordBoundary(long offset) {
+        return offset >= HEADER_SIZE && offset <= logSize && (offset - HEADER_SIZE) % RECORD_SIZE == 0 ;
+    }
+
+    /**
+     * Method to read the log's header into generation and baseline.
+     * @return  False if there is no log, or its header is damaged.
+     */
+    private boolean readLogHeader() throws IOException {
+        ByteBuffer header = readFile(logFile, HEADER_SIZE) ;
+        if (header == null || header.getInt(0) != LOG_MAGIC || header.getInt(4) != FORMAT_VERSION
+                || !checksumValid(header, 0, Totals.SIZE + 16)) {
+            return false ;
+        }
+        generation = header.getLong(8) ;
+        header.position(16);
+        baseline = Totals.read(header) ;
+        return true ;
+    }
+
+    /**
+     * Method to add the log's records from the given offset to the totals. Damaged records followed by a valid one
+     * are skipped (and left in the log). Anything after the last valid record, i.e. a partly written record or a
+     * run of damaged ones, is truncated.
+     * @param from  Offset in the log of the first record to replay.
+     * @return  True if any records were replayed or removed.
+     */
+    private boolean replay(long from) throws IOException {
+        ByteBuffer chunk = ByteBuffer.allocate(256 * RECORD_SIZE) ;
+        long position = from ;
+        long validEnd = from ;      // End of the last valid record
+        int damaged = 0 ;           // Damaged records since the last valid one
+        int skipped = 0 ;
+        boolean changed = false ;
+        while (position + RECORD_SIZE <= logSize) {
+            chunk.clear();
+            chunk.limit((int) Math.min(chunk.capacity(), (logSize - position) / RECORD_SIZE * RECORD_SIZE));
+            while (chunk.hasRemaining()) {
+                if (logChannel.read(chunk, position + chunk.position()) < 0) {
+                    break ;
+                }
+            }
+            int offset = 0 ;
+            for ( ; offset + RECORD_SIZE <= chunk.position() ; offset += RECORD_SIZE) {
+                if (checksumValid(chunk, offset, RECORD_SIZE - 4)) {
+                    totals.add(chunk, offset);
+                    validEnd = position + offset + RECORD_SIZE ;
+                    skipped += damaged ;
+                    damaged = 0 ;
+                    changed = true ;
+                } else {
+                    damaged++ ;
+                }
+            }
+            position += offset ;
+            if (offset < chunk.limit()) {
+                break ;
+            }
+        }
+        if (skipped > 0) {
+            Log.w(LOG_TAG, "Skipped " + skipped + " damaged records in the match log.");
+        }
+        if (validEnd < logSize) {
+            Log.w(LOG_TAG, "Removing " + (logSize - validEnd) + " damaged bytes from the end of the match log.");
+            logChannel.truncate(validEnd) ;
+            logChannel.force(true);
+            logSize = validEnd ;
+            changed = true ;
+        }
+        return changed ;
+    }
+
+    /**
+     * Method to encode a match into the write buffer and add it to the totals, flushing if the buffer is full.
+     */
+    private void write(MatchRecord match) throws IOException {
+        if (logChannel == null) {
+            throw new IOException("Match stats store not loaded.") ;
+        }
+        int start = writeBuffer.position() ;
+        match.write(writeBuffer);
+        writeBuffer.putInt(0);      // Reserved
+        writeBuffer.putInt(checksum(writeBuffer, start, RECORD_SIZE - 4));
+        totals.add(writeBuffer, start);
+        publishStats();
+
+        if (!writeBuffer.hasRemaining()) {
+            flushBuffer();
+        } else if (scheduledFlush == null) {
+            scheduledFlush = executor.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    flush();
+                }
+            }, FLUSH_DELAY_MS, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Method to append the buffered records to the log, then update the index, then compact the log if it is due.
+     */
+    private void flushBuffer() throws IOException {
+        if (scheduledFlush != null) {
+            scheduledFlush.cancel(false);
+            scheduledFlush = null ;
+        }
+        if (writeBuffer.position() == 0 || logChannel == null) {
+            return ;
+        }
+        writeBuffer.flip();
+        try {
+            while (writeBuffer.hasRemaining()) {
+                logSize += logChannel.write(writeBuffer, logSize) ;
+            }
+        } finally {
+            writeBuffer.clear();
+        }
+        logChannel.force(false);
+        writeIndex();
+        if ((logSize - HEADER_SIZE) / RECORD_SIZE >= COMPACT_THRESHOLD) {
+            compact();
+        }
+    }
+
+    /**
+     * Method to fold all but the most recent COMPACT_KEEP records into the log header's totals, and rewrite the log.
+     */
+    private void compact() throws IOException {
+        long keepFrom = logSize - (long) COMPACT_KEEP * RECORD_SIZE ;
+        // Totals of the records being dropped, on top of those already dropped
+        Totals newBaseline = baseline.copy() ;
+        ByteBuffer chunk = ByteBuffer.allocate(256 * RECORD_SIZE) ;
+        for (long position = HEADER_SIZE ; position < keepFrom ; position += chunk.limit()) {
+            chunk.clear();
+            chunk.limit((int) Math.min(chunk.capacity(), keepFrom - position));
+            readFully(chunk, position);
+            for (int offset = 0 ; offset < chunk.limit() ; offset += RECORD_SIZE) {
+                // Damaged records were skipped by replay(), so aren't in the totals either
+                if (checksumValid(chunk, offset, RECORD_SIZE - 4)) {
+                    newBaseline.add(chunk, offset);
+                }
+            }
+        }
+        ByteBuffer kept = ByteBuffer.allocate(COMPACT_KEEP * RECORD_SIZE) ;
+        readFully(kept, keepFrom);
+        kept.flip();
+
+        // Only move on to the new generation once the new log has replaced the old one
+        Totals oldBaseline = baseline ;
+        baseline = newBaseline ;
+        generation++ ;
+        logChannel.close();
+        try {
+            writeLog(kept, kept.limit()) ;
+        } catch (IOException e) {
+            generation-- ;
+            baseline = oldBaseline ;
+            throw e ;
+        } finally {
+            logChannel = new RandomAccessFile(logFile, "rw").getChannel() ;
+            logSize = logChannel.size() ;
+        }
+        writeIndex();
+        Log.d(LOG_TAG, "Compacted match log to generation " + generation);
+    }
+
+    /**
+     * Method to write a new log (header plus the given records) to a temporary file, and rename it over the current log.
+     * @param records   Records to follow the header, or null for none.
+     * @param length    Number of bytes of records.
+     */
+    private void writeLog(ByteBuffer records, int length) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE) ;
+        header.putInt(LOG_MAGIC);
+        header.putInt(FORMAT_VERSION);
+        header.putLong(generation);
+        baseline.write(header);
+        header.putInt(checksum(header, 0, header.position()));
+        header.clear();
+        ByteBuffer[] contents = records == null ? new ByteBuffer[]{header} : new ByteBuffer[]{header, records} ;
+        replaceFile(logFile, contents, HEADER_SIZE + length);
+    }
+
+    /**
+     * Method to write the index: the current totals, and how much of the log they cover.
+     */
+    private void writeIndex() throws IOException {
+        ByteBuffer index = ByteBuffer.allocate(INDEX_SIZE) ;
+        index.putInt(INDEX_MAGIC);
+        index.putInt(FORMAT_VERSION);
+        index.putLong(generation);
+        index.putLong(logSize);
+        totals.write(index);
+        index.putInt(checksum(index, 0, index.position()));
+        index.clear();
+        replaceFile(indexFile, new ByteBuffer[]{index}, INDEX_SIZE);
+    }
+
+    /**
+     * Method to replace a file, by writing and syncing a temporary file then renaming it over the original.
+     */
+    private void replaceFile(File file, ByteBuffer[] contents, long length) throws IOException {
+        File temp = new File(file.getPath() + TEMP_SUFFIX) ;
+        RandomAccessFile output = new RandomAccessFile(temp, "rw") ;
+        try {
+            FileChannel channel = output.getChannel() ;
+            channel.truncate(0) ;
+            long written = 0 ;
+            while (written < length) {
+                written += channel.write(contents) ;
+            }
+            channel.force(true);
+        } finally {
+            output.close();
+        }
+        if (!temp.renameTo(file)) {
+            throw new IOException("Couldn't rename " + temp + " to " + file) ;
+        }
+    }
+
+    /**
+     * Method to read the start of a file.
+     * @return  The first <length> bytes, or null if the file doesn't exist or is too short.
+     */
+    private static ByteBuffer readFile(File file, int length) throws IOException {
+        if (!file.exists() || file.length() < length) {
+            return null ;
+        }
+        RandomAccessFile input = new RandomAccessFile(file, "r") ;
+        try {
+            ByteBuffer buffer = ByteBuffer.allocate(length) ;
+            FileChannel channel = input.getChannel() ;
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer, buffer.position()) < 0) {
+                    return null ;
+                }
+            }
+            return buffer ;
+        } finally {
+            input.close();
+        }
+    }
+
+    /**
+     * Method to fill a buffer (up to its limit) from the log.
+     */
+    private void readFully(ByteBuffer buffer, long position) throws IOException {
+        long start = position - buffer.position() ;
+        while (buffer.hasRemaining()) {
+            if (logChannel.read(buffer, start + buffer.position()) < 0) {
+                throw new IOException("Unexpected end of match log.") ;
+            }
+        }
+    }
+
+    private int checksum(ByteBuffer buffer, int offset, int length) {
+        crc.reset();
+        crc.update(buffer.array(), buffer.arrayOffset() + offset, length);
+        return (int) crc.getValue() ;
+    }
+
+    /**
+     * Method to check the CRC stored immediately after the given bytes.
+     */
+    private boolean checksumValid(ByteBuffer buffer, int offset, int length) {
+        return checksum(buffer, offset, length) == buffer.getInt(offset + length) ;
+    }
+
+    private void publishStats() {
+        stats = new Stats(totals.copy()) ;
+    }
+
+    /****************************** Data classes ************************************************/
+
+    /**
+     * Class to hold the stats of a single match, for adding to the store.
+     */
+    public static class MatchRecord {
+        private long timestamp ;
+        private int[] rallies = new int[PLAYERS] ;
+        private int[] goals = new int[PLAYERS] ;
+        private float[] minPitch = new float[PLAYERS] ;
+        private float[] maxPitch = new float[PLAYERS] ;
+        private int[] reactionLatencySum = new int[PLAYERS] ;
+        private int[] reactionLatencyCount = new int[PLAYERS] ;
+
+        /**
+         * MatchRecord constructor.
+         * @param timestamp Time the match ended, in milliseconds since the epoch.
+         */
+        public MatchRecord(long timestamp) {
+            this.timestamp = timestamp ;
+        }
+
+        /**
+         * Method to set one player's stats for the match.
+         * @param player                Player index, e.g. PongPitchSurfaceView.PLAYER_ONE.
+         * @param rallies               Number of times the player returned the ball.
+         * @param goals                 Number of goals the player scored.
+         * @param minPitch              Lowest pitch sung, in Hz, or 0 if none.
+         * @param maxPitch              Highest pitch sung, in Hz, or 0 if none.
+         * @param reactionLatencySum    Sum of the player's reaction times, in ms.
+         * @param reactionLatencyCount  Number of reaction times in the sum.
+         */
+        public void setPlayer(int player, int rallies, int goals, float minPitch, float maxPitch, int reactionLatencySum, int reactionLatencyCount) {
+            this.rallies[player] = rallies ;
+            this.goals[player] = goals ;
+            this.minPitch[player] = minPitch ;
+            this.maxPitch[player] = maxPitch ;
+            this.reactionLatencySum[player] = reactionLatencySum ;
+            this.reactionLatencyCount[player] = reactionLatencyCount ;
+        }
+
+        /**
+         * Method to encode the match (RECORD_SIZE - 8 bytes; the reserved field and CRC are added by the store).
+         */
+        void write(ByteBuffer buffer) {
+            buffer.putLong(timestamp);
+            for (int p = 0 ; p < PLAYERS ; p++) {
+                buffer.putInt(rallies[p]);
+                buffer.putInt(goals[p]);
+                buffer.putFloat(minPitch[p]);
+                buffer.putFloat(maxPitch[p]);
+                buffer.putInt(reactionLatencySum[p]);
+                buffer.putInt(reactionLatencyCount[p]);
+            }
+        }
+    }
+
+    /**
+     * Class holding the running totals of a number of matches.
+     */
+    static class Totals {
+        static final int SIZE = 8 + PLAYERS * 40 ;
+
+        long matches ;
+        long[] rallies = new long[PLAYERS] ;
+        long[] goals = new long[PLAYERS] ;
+        long[] reactionLatencySum = new long[PLAYERS] ;
+        long[] reactionLatencyCount = new long[PLAYERS] ;
+        float[] minPitch = new float[PLAYERS] ;     // 0 if no pitch recorded
+        float[] maxPitch = new float[PLAYERS] ;
+
+        /**
+         * Method to add an encoded match record to the totals.
+         * @param record    Buffer holding the record.
+         * @param offset    Offset of the record in the buffer.
+         */
+        void add(ByteBuffer record, int offset) {
+            matches++ ;
+            int position = offset + 8 ;
+            for (int p = 0 ; p < PLAYERS ; p++) {
+                rallies[p] += record.getInt(position) ;
+                goals[p] += record.getInt(position + 4) ;
+                mergePitch(p, record.getFloat(position + 8), record.getFloat(position + 12));
+                reactionLatencySum[p] += record.getInt(position + 16) ;
+                reactionLatencyCount[p] += record.getInt(position + 20) ;
+                position += 24 ;
+            }
+        }
+
+        private void mergePitch(int player, float min, float max) {
+            if (min > 0 && (minPitch[player] == 0 || min < minPitch[player])) {
+                minPitch[player] = min ;
+            }
+            if (max > maxPitch[player]) {
+                maxPitch[player] = max ;
+            }
+        }
+
+        void write(ByteBuffer buffer) {
+            buffer.putLong(matches);
+            for (int p = 0 ; p < PLAYERS ; p++) {
+                buffer.putLong(rallies[p]);
+                buffer.putLong(goals[p]);
+                buffer.putLong(reactionLatencySum[p]);
+                buffer.putLong(reactionLatencyCount[p]);
+                buffer.putFloat(minPitch[p]);
+                buffer.putFloat(maxPitch[p]);
+            }
+        }
+
+        static Totals read(ByteBuffer buffer) {
+            Totals totals = new Totals() ;
+            totals.matches = buffer.getLong() ;
+            for (int p = 0 ; p < PLAYERS ; p++) {
+                totals.rallies[p] = buffer.getLong() ;
+                totals.goals[p] = buffer.getLong() ;
+                totals.reactionLatencySum[p] = buffer.getLong() ;
+                totals.reactionLatencyCount[p] = buffer.getLong() ;
+                totals.minPitch[p] = buffer.getFloat() ;
+                totals.maxPitch[p] = buffer.getFloat() ;
+            }
+            return totals ;
+        }
+
+        Totals copy() {
+            Totals copy = new Totals() ;
+            copy.matches = matches ;
+            copy.rallies = rallies.clone() ;
+            copy.goals = goals.clone() ;
+            copy.reactionLatencySum = reactionLatencySum.clone() ;
+            copy.reactionLatencyCount = reactionLatencyCount.clone() ;
+            copy.minPitch = minPitch.clone() ;
+            copy.maxPitch = maxPitch.clone() ;
+            return copy ;
+        }
+    }
+
+    /**
+     * Class holding the totals of every match played, as shown to the user.
+     */
+    public static class Stats {
+        private final Totals totals ;
+
+        Stats(Totals totals) {
+            this.totals = totals ;
+        }
+
+        /**
+         * @return  Number of matches played.
+         */
+        public long getMatches() {
+            return totals.matches ;
+        }
+
+        /**
+         * @param player    Player index.
+         * @return  Number of times the player has returned the ball.
+         */
+        public long getRallies(int player) {
+            return totals.rallies[player] ;
+        }
+
+        /**
+         * @param player    Player index.
+         * @return  Number of goals the player has scored.
+         */
+        public long getGoals(int player) {
+            return totals.goals[player] ;
+        }
+
+        /**
+         * @param player    Player index.
+         * @return  Lowest pitch the player has sung, in Hz, or 0 if none.
+         */
+        public float getMinPitch(int player) {
+            return totals.minPitch[player] ;
+        }
+
+        /**
+         * @param player    Player index.
+         * @return  Highest pitch the player has sung, in Hz, or 0 if none.
+         */
+        public float getMaxPitch(int player) {
+            return totals.maxPitch[player] ;
+        }
+
+        /**
+         * @param player    Player index.
+         * @return  Player's mean reaction time, in ms, or -1 if none has been recorded.
+         */
+        public double getAverageReactionLatency(int player) {
+            if (totals.reactionLatencyCount[player] == 0) {
+                return -1 ;
+            }
+            return (double) totals.reactionLatencySum[player] / totals.reactionLatencyCount[player] ;
+        }
+    }
+}
@@ -0,0 +1,229 @@
+package com.thonners.singpong;
+
+/**
+ * Class to estimate the pitch at which a player is singing, from a stream of audio samples.
+ *
+ * The estimate uses the YIN difference function over a sliding analysis window:
+ * d(tau) = sum over the window of (x[j] - x[j + tau])^2
+ * Rather than recomputing d from scratch for every estimate (O(window * lags)), it is updated
+ * incrementally as each sample enters and the oldest leaves (O(lags) per sample). An estimate is
+ * made every <hopSize> samples, so the update rate can be traded against CPU at runtime with
+ * setHopSize(), independently of the window length.
+ *
+ * To stop floating point error building up in the running sums, d is recomputed from scratch every
+ * RESYNC_WINDOWS windows' worth of samples.
+ *
+ * Not thread safe, other than setHopSize(). Samples should be added from a single (audio) thread.
+ *
+ * @author Thonners
+ * @since 18/10/26
+ * @version 1.0
+ */
+public class PitchDetector {
+
+    // Value passed to the listener when no pitch can be found (e.g. silence or noise)
+    public static final float NO_PITCH = -1f ;
+
+    private static final float SHORT_SCALE = 1f / 32768f ;
+    private static final double DEFAULT_THRESHOLD = 0.15 ;
+    private static final int RESYNC_WINDOWS = 32 ;
+
+    /**
+     * Interface to receive pitch estimates.
+     */
+    public interface OnPitchListener {
+        /**
+         * Called on the thread adding samples, once every hopSize samples.
+         * @param frequency Estimated pitch in Hz, or NO_PITCH.
+         */
+        void onPitchEstimated(float frequency) ;
+    }
+
+    private int sampleRate ;
+    private int windowSize ;
+    private int minLag ;    // Shortest period searched, i.e. highest frequency
+    private int maxLag ;    // Longest period searched, i.e. lowest frequency
+    private int span ;      // Samples needed for one estimate: windowSize + maxLag
+    private double threshold = DEFAULT_THRESHOLD ;
+    private volatile int hopSize ;
+
+    // Samples, stored twice (at i and i + span) so that reads of up to span samples from any start never wrap
+    private float[] samples ;
+    private int head = 0 ;              // Index of the oldest sample
+    private long samplesAdded = 0 ;
+    private int samplesSinceEstimate = 0 ;
+    private int samplesSinceResync = 0 ;
+
+    private double[] difference ;       // d(tau), for tau = 0..maxLag
+    private OnPitchListener listener ;
+
+    /**
+     * PitchDetector constructor.
+     * @param sampleRate    Sample rate of the audio, in Hz.
+     * @param windowSize    Number of samples in the analysis window.
+     * @param minFrequency  Lowest pitch to detect, in Hz.
+     * @param maxFrequency  Highest pitch to detect, in Hz.
+     * @param hopSize       Number of samples between estimates.
+     * @param listener      Listener to receive the estimates.
+     */
+    public PitchDetector(int sampleRate, int windowSize, float minFrequency, float maxFrequency, int hopSize, OnPitchListener listener) {
+        this.sampleRate = sampleRate ;
+        this.windowSize = windowSize ;
+        this.maxLag = (int) Math.ceil(sampleRate / minFrequency) ;
+        this.minLag = Math.max(2, (int) Math.floor(sampleRate / maxFrequency)) ;
+        this.span = windowSize + maxLag ;
+        this.samples = new float[2 * span] ;
+        this.difference = new double[maxLag + 1] ;
+        this.listener = listener ;
+        setHopSize(hopSize);
+    }
+
+    /**
+     * Method to set the number of samples between estimates. Can be called from any thread.
+     * Smaller hops give more frequent paddle updates, at the cost of more CPU.
+     * @param hopSize   Number of samples between estimates (minimum 1).
+     */
+    public void setHopSize(int hopSize) {
+        this.hopSize = Math.max(1, hopSize) ;
+    }
+
+    /**
+     * Method to return the number of samples between estimates.
+     * @return Hop size, in samples.
+     */
+    public int getHopSize() {
+        return hopSize ;
+    }
+
+    /**
+     * Method to set the threshold of the normalised difference function below which a period is accepted.
+     * @param threshold Threshold, typically 0.1 - 0.2. Higher values find a pitch more often, but are less reliable.
+     */
+    public void setThreshold(double threshold) {
+        this.threshold = threshold ;
+    }
+
+    /**
+     * Method to add 16 bit PCM samples, e.g. as read from an AudioRecord.
+     * @param buffer    Sample buffer.
+     * @param offset    Index of the first sample to add.
+     * @param length    Number of samples to add.
+     */
+    public void addSamples(short[] buffer, int offset, int length) {
+        for (int i = offset ; i < offset + length ; i++) {
+            addSample(buffer[i] * SHORT_SCALE);
+        }
+    }
+
+    /**
+     * Method to add a single sample, updating the difference function and making an estimate if due.
+     * @param sample    Sample, scaled to [-1, 1].
+     */
+    public void addSample(float sample) {
+        int oldest = head ;
+        float leaving = samples[oldest] ;
+        samples[oldest] = sample ;
+        samples[oldest + span] = sample ;
+        head = oldest + 1 == span ? 0 : oldest + 1 ;
+        samplesAdded++ ;
+
+        if (samplesAdded < span) {
+            // Not enough samples for a whole window yet
+            return ;
+        }
+        if (samplesAdded == span || ++samplesSinceResync >= RESYNC_WINDOWS * span) {
+            recomputeDifference();
+        } else {
+            // Remove the term for the sample which has left the window, and add the term for the one which has entered it
+            int entering = head + windowSize - 1 ;
+            for (int tau = 1 ; tau <= maxLag ; tau++) {
+                float removed = leaving - samples[oldest + tau] ;
+                float added = samples[entering] - samples[entering + tau] ;
+                difference[tau] += added * added - removed * removed ;
+            }
+        }
+
+        if (++samplesSinceEstimate >= hopSize) {
+            samplesSinceEstimate = 0 ;
+            if (listener != null) {
+                listener.onPitchEstimated(estimatePitch());
+            }
+        }
+    }
+
+    /**
+     * Method to recompute the difference function from scratch, over the current window.
+     */
+    void recomputeDifference() {
+        samplesSinceResync = 0 ;
+        for (int tau = 1 ; tau <= maxLag ; tau++) {
+            double sum = 0 ;
+            for (int j = head ; j < head + windowSize ; j++) {
+                float delta = samples[j] - samples[j + tau] ;
+                sum += delta * delta ;
+            }
+            difference[tau] = sum ;
+        }
+    }
+
+    /**
+     * Method to return one value of the difference function, e.g. to check the incremental update against recomputeDifference().
+     * @param tau   Lag, from 0 to the longest period searched.
+     * @return  d(tau) over the current window.
+     */
+    double getDifference(int tau) {
+        return difference[tau] ;
+    }
+
+    /**
+     * Method to estimate the pitch from the current difference function.
+     * The difference function is normalised by its running mean (the YIN cumulative mean normalised
+     * difference), and the first dip below the threshold is taken as the period. The period is refined
+     * with parabolic interpolation.
+     *
+     * @return  The estimated pitch in Hz, or NO_PITCH if there isn't a clear period.
+     */
+    public float estimatePitch() {
+        if (samplesAdded < span) {
+            return NO_PITCH ;
+        }
+        double runningSum = 0 ;
+        for (int tau = 1 ; tau < minLag ; tau++) {
+            runningSum += difference[tau] ;
+        }
+        int tau = minLag ;
+        while (tau <= maxLag) {
+            runningSum += difference[tau] ;
+            double normalised = runningSum > 0 ? difference[tau] * tau / runningSum : 1.0 ;
+            if (normalised < threshold) {
+                // Walk down to the bottom of the dip
+                while (tau + 1 <= maxLag && difference[tau + 1] < difference[tau]) {
+                    tau++ ;
+                }
+                return (float) (sampleRate / interpolatePeriod(tau)) ;
+            }
+            tau++ ;
+        }
+        return NO_PITCH ;
+    }
+
+    /**
+     * Method to refine a period to sub-sample accuracy, by fitting a parabola through the difference
+     * function either side of it.
+     * @param tau   Period (lag) at a local minimum of the difference function.
+     * @return  The refined period.
+     */
+    private double interpolatePeriod(int tau) {
+        if (tau <= 1 || tau >= maxLag) {
+            return tau ;
+        }
+        double previous = difference[tau - 1] ;
+        double current = difference[tau] ;
+        double next = difference[tau + 1] ;
+        double curvature = previous - 2 * current + next ;
+        if (curvature <= 0) {
+            return tau ;
+        }
+        return tau + 0.5 * (previous - next) / curvature ;
+    }
+}
@@ -0,0 +1,175 @@
+package com.thonners.singpong;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.graphics.Rect;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * Class to draw each player's recent pitch, so singers can see what their voice is doing to the paddle.
+ *
+ * Estimates are kept in a fixed-size ring buffer per player. The contour is drawn into a cached
+ * bitmap, one column per frame, with the column to write moving round the bitmap like a ring buffer.
+ * Only the new column is drawn each frame; the bitmap is then copied to the screen in two parts
+ * (oldest columns first), which scrolls the history without redrawing it. The copies are 1:1 and
+ * unfiltered, so each frame costs a fixed COLUMNS x ROWS blit, whatever the size of the screen.
+ *
+ * Estimates may be added from the audio thread (one thread per player), while draw() is called from
+ * the game thread. Nothing is allocated after construction.
+ *
+ * @author Thonners
+ * @since 18/10/26
+ * @version 1.0
+ */
+public class PitchHistoryOverlay {
+
+    private static final int PLAYERS = 2 ;
+    private static final int HISTORY_LENGTH = 256 ;         // Estimates kept per player. Must be a power of two.
+    private static final int HISTORY_MASK = HISTORY_LENGTH - 1 ;
+    private static final int COLUMNS = 256 ;                // Frames of history shown
+    private static final int ROWS = 128 ;
+    private static final float MIN_FREQUENCY = 60f ;        // Hz, at the bottom of the overlay
+    private static final float MAX_FREQUENCY = 1000f ;      // Hz, at the top of the overlay
+    private static final int[] PLAYER_COLOURS = {Color.CYAN, Color.MAGENTA} ;
+
+    // Estimate ring buffers, and the number of estimates written per player (published with lazySet)
+    private final float[][] history = new float[PLAYERS][HISTORY_LENGTH] ;
+    private final AtomicIntegerArray written = new AtomicIntegerArray(PLAYERS) ;
+    // Game thread only: number of estimates already drawn, and the row of the last one (-1 if none)
+    private final int[] drawn = new int[PLAYERS] ;
+    private final int[] lastRow = {-1, -1} ;
+    private boolean hasEstimates = false ;
+
+    private final Bitmap bitmap = Bitmap.createBitmap(COLUMNS, ROWS, Bitmap.Config.ARGB_8888) ;
+    private final Canvas bitmapCanvas = new Canvas(bitmap) ;
+    private int nextColumn = 0 ;
+
+    private final Paint paintBackground = new Paint() ;
+    private final Paint[] paintPlayers = new Paint[PLAYERS] ;
+    private final Paint paintBlit = new Paint() ;
+    private final Rect source = new Rect() ;
+    private final Rect destination = new Rect() ;
+
+    /**
+     * PitchHistoryOverlay constructor.
+     */
+    public PitchHistoryOverlay() {
+        paintBackground.setColor(Color.BLACK);
+        for (int p = 0 ; p < PLAYERS ; p++) {
+            paintPlayers[p] = new Paint() ;
+            paintPlayers[p].setColor(PLAYER_COLOURS[p]);
+        }
+        paintBlit.setAlpha(160);
+        bitmap.eraseColor(Color.BLACK);
+    }
+
+    /**
+     * Method to return the width of the overlay on screen.
+     * @return  Width in pixels.
+     */
+    public int getWidth() {
+        return COLUMNS ;
+    }
+
+    /**
+     * Method to return the height of the overlay on screen.
+     * @return  Height in pixels.
+     */
+    public int getHeight() {
+        return ROWS ;
+    }
+
+    /**
+     * Method to add a pitch estimate. Can be called from any one thread per player.
+     * @param player    Player index, e.g. PongPitchSurfaceView.PLAYER_ONE.
+     * @param frequency Pitch in Hz, or PitchDetector.NO_PITCH.
+     */
+    public void addEstimate(int player, float frequency) {
+        int count = written.get(player) ;
+        history[player][count & HISTORY_MASK] = frequency ;
+        written.lazySet(player, count + 1);
+    }
+
+    /**
+     * Method to draw the next column of the history into the cached bitmap, then copy the bitmap onto the canvas.
+     * Does nothing until the first estimate arrives. Game thread only.
+     * @param canvas    Canvas to draw on.
+     * @param left      Left edge of the overlay on the canvas. The overlay is getWidth() x getHeight().
+     * @param top       Top edge of the overlay on the canvas.
+     */
+    public void draw(Canvas canvas, int left, int top) {
+        int column = nextColumn ;
+        bitmapCanvas.drawRect(column, 0, column + 1, ROWS, paintBackground);
+        for (int p = 0 ; p < PLAYERS ; p++) {
+            drawColumn(p, column) ;
+        }
+        nextColumn = (column + 1) % COLUMNS ;
+        if (!hasEstimates) {
+            return ;
+        }
+
+        // Copy the oldest columns (from nextColumn to the end of the bitmap) to the left of the overlay, and the newest to the right
+        int split = left + COLUMNS - nextColumn ;
+        source.set(nextColumn, 0, COLUMNS, ROWS);
+        destination.set(left, top, split, top + ROWS);
+        canvas.drawBitmap(bitmap, source, destination, paintBlit);
+        if (nextColumn > 0) {
+            source.set(0, 0, nextColumn, ROWS);
+            destination.set(split, top, left + COLUMNS, top + ROWS);
+            canvas.drawBitmap(bitmap, source, destination, paintBlit);
+        }
+    }
+
+    /**
+     * Method to draw one player's estimates since the last frame into a column of the bitmap.
+     * The span covered by the new estimates (joined to the previous one) is filled, so the contour is continuous.
+     */
+    private void drawColumn(int player, int column) {
+        int count = written.get(player) ;
+        int from = Math.max(drawn[player], count - HISTORY_LENGTH) ;
+        drawn[player] = count ;
+        int top = lastRow[player] ;
+        int bottom = lastRow[player] ;
+        int row = -1 ;
+        for (int i = from ; i < count ; i++) {
+            row = frequencyToRow(history[player][i & HISTORY_MASK]) ;
+            if (row < 0) {
+                // No pitch, so break the contour
+                top = -1 ;
+                bottom = -1 ;
+                continue ;
+            }
+            hasEstimates = true ;
+            if (top < 0) {
+                top = row ;
+                bottom = row ;
+            } else {
+                top = Math.min(top, row) ;
+                bottom = Math.max(bottom, row) ;
+            }
+        }
+        if (from < count) {
+            lastRow[player] = row ;
+        }
+        if (top >= 0) {
+            bitmapCanvas.drawRect(column, top, column + 1, bottom + 1, paintPlayers[player]);
+        }
+    }
+
+    /**
+     * Method to convert a pitch to a row of the bitmap, on a logarithmic (i.e. musical) scale.
+     * @param frequency Pitch in Hz.
+     * @return  The row, with high pitches at the top, or -1 if there is no pitch.
+     */
+    private static int frequencyToRow(float frequency) {
+        if (frequency <= 0) {
+            return -1 ;
+        }
+        double fraction = Math.log(frequency / MIN_FREQUENCY) / Math.log(MAX_FREQUENCY / MIN_FREQUENCY) ;
+        fraction = Math.max(0.0, Math.min(1.0, fraction)) ;
+        return (int) Math.round((1.0 - fraction) * (ROWS - 1)) ;
+    }
+}
@@ -19,13 +19,16 @@ import java.util.Locale;
  * An example full-screen activity that shows and hides the system UI (i.e.
  * status bar and navigation/system bar) with user interaction.
  */
-public class PlayActivity extends AppCompatActivity {
+public class PlayActivity extends AppCompatActivity implements PongEventQueue.Listener {
 
     private final static String LOG_TAG = "PlayActivity" ;
+    private final static String KEY_MATCH_STATE = "matchState" ;
 
     private PongPitchSurfaceView pitchSV ;
     private PongPitch pitch ;
     private PongBall ball ;
+    // Goal messages, indexed by player. Resolved up front so events can be shown without formatting strings.
+    private String[] goalScoredMessages ;
 
     /**
      * Whether or not the system UI should be auto-hidden after
@@ -130,6 +133,15 @@ public class PlayActivity extends AppCompatActivity {
         // Get the required view(s)
         //pitchSurfaceView = (SurfaceView) findViewById(R.id.primary_surface_view) ;
         pitchSV = (PongPitchSurfaceView) findViewById(R.id.pitch_surface_view) ;
+        // Carry on with the previous match if the activity is being recreated
+        if (savedInstanceState != null) {
+            pitchSV.restoreMatchState(savedInstanceState.getIntArray(KEY_MATCH_STATE));
+        }
+
+        // Resolve the strings for game events
+        goalScoredMessages = new String[2] ;
+        goalScoredMessages[PongPitchSurfaceView.PLAYER_ONE] = String.format(Locale.getDefault(), getResources().getString(R.string.goal_scored), getResources().getString(R.string.player_one)) ;
+        goalScoredMessages[PongPitchSurfaceView.PLAYER_TWO] = String.format(Locale.getDefault(), getResources().getString(R.string.goal_scored), getResources().getString(R.string.player_two)) ;
     }
 
     @Override
@@ -158,6 +170,21 @@ public class PlayActivity extends AppCompatActivity {
         pitchSV.onPausePongPitchSurfaceView();
     }
 
+    @Override
+    protected void onSaveInstanceState(Bundle outState) {
+        super.onSaveInstanceState(outState);
+        int[] matchState = pitchSV.saveMatchState() ;
+        if (matchState != null) {
+            outState.putIntArray(KEY_MATCH_STATE, matchState);
+        }
+    }
+
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        pitchSV.onDestroyPongPitchSurfaceView();
+    }
+
     @Override
     public boolean onOptionsItemSelected(MenuItem item) {
         int id = item.getItemId();
@@ -224,8 +251,26 @@ public class PlayActivity extends AppCompatActivity {
         //ball = new PongBall(pitchSV) ;
     }
 
-    public void showGoalScoredToast(String scoringPlayer) {
-        Toast.makeText(this, String.format(Locale.getDefault(), getResources().getString(R.string.goal_scored), scoringPlayer), Toast.LENGTH_SHORT);
+    /**
+     * Method to handle events from the game thread. Called on the UI thread by the PongEventQueue.
+     * @param type      Event type.
+     * @param argument  Event argument.
+     */
+    @Override
+    public void onGameEvent(int type, int argument) {
+        switch (type) {
+            case PongEventQueue.EVENT_GOAL_SCORED:
+                showGoalScoredToast(argument);
+                break;
+        }
+    }
+
+    /**
+     * Method to show the goal scored message.
+     * @param scoringPlayer Index of the player who scored, e.g. PongPitchSurfaceView.PLAYER_ONE.
+     */
+    private void showGoalScoredToast(int scoringPlayer) {
+        Toast.makeText(this, goalScoredMessages[scoringPlayer], Toast.LENGTH_SHORT).show();
     }
 
 }
@@ -0,0 +1,210 @@
+package com.thonners.singpong;
+
+import java.util.Random;
+
+/**
+ * Class defining a computer controlled paddle, so that a lone player has an opponent.
+ *
+ * Rather than stepping the simulation forward to see where the ball will end up, the intercept
+ * point is predicted analytically: the ball's straight line trajectory is extended to the paddle's
+ * x coordinate, then folded back into the pitch over the top/bottom walls (the same reflections
+ * given by getReflectionNormal). Each decision is therefore O(1), and can be made every timestep.
+ * The prediction ignores the level's obstacles (see PongLevel), so a ball deflected by one is only
+ * tracked correctly again from the next decision after the deflection.
+ *
+ * Difficulty is set by the reaction delay (timesteps between looking at the ball), the aiming
+ * error (pitch steps), and the maximum speed of the paddle (pitch steps / timestep).
+ *
+ * The class has no dependency on the view, so it can be driven directly with ball coordinates
+ * (e.g. by a headless simulation).
+ *
+ * @author Thonners
+ * @since 18/10/26
+ * @version 1.0
+ */
+public class PongAIPaddle {
+
+    // Difficulty identifiers
+    public static final int DIFFICULTY_EASY     = 0 ;
+    public static final int DIFFICULTY_MEDIUM   = 1 ;
+    public static final int DIFFICULTY_HARD     = 2 ;
+
+    private Random random ;
+
+    // Paddle geometry
+    private int paddleX ;       // x coordinate at which the paddle meets the ball's centre
+    private int paddleHeight ;
+    private int positionY ;     // y coordinate of the paddle's centre
+
+    // Limits of the ball's centre between the top and lower walls, i.e. the lines it is reflected about
+    private int wallMin ;
+    private int wallMax ;
+
+    // Difficulty params
+    private int reactionDelay ; // Timesteps between each decision
+    private int maxError ;      // Maximum aiming error, in pitch steps
+    private int maxSpeed ;      // Maximum paddle speed, in pitch steps / timestep
+
+    private int ticksUntilDecision = 0 ;
+    private int targetY ;
+
+    /**
+     * PongAIPaddle constructor.
+     * @param paddleX       x coordinate at which the paddle meets the ball's centre.
+     * @param paddleHeight  Height of the paddle.
+     * @param wallMin       Smallest y coordinate the ball's centre can reach before being reflected.
+     * @param wallMax       Largest y coordinate the ball's centre can reach before being reflected.
+     * @param random        Random number generator used for the aiming error. Pass a seeded instance for repeatable games.
+     */
+    public PongAIPaddle(int paddleX, int paddleHeight, int wallMin, int wallMax, Random random) {
+        this.paddleX = paddleX ;
+        this.paddleHeight = paddleHeight ;
+        this.wallMin = wallMin ;
+        this.wallMax = wallMax ;
+        this.random = random ;
+        this.positionY = (wallMin + wallMax) / 2 ;
+        this.targetY = positionY ;
+        setDifficulty(DIFFICULTY_MEDIUM);
+    }
+
+    /**
+     * Method to set the difficulty using one of the preset identifiers.
+     * @param difficulty    One of DIFFICULTY_EASY, DIFFICULTY_MEDIUM or DIFFICULTY_HARD.
+     */
+    public void setDifficulty(int difficulty) {
+        switch (difficulty) {
+            case DIFFICULTY_EASY:
+                setDifficulty(20, paddleHeight, 4);
+                break;
+            case DIFFICULTY_HARD:
+                setDifficulty(2, paddleHeight / 8, 10);
+                break;
+            case DIFFICULTY_MEDIUM:
+            default:
+                setDifficulty(8, paddleHeight / 3, 6);
+                break;
+        }
+    }
+
+    /**
+     * Method to set the difficulty params explicitly.
+     * @param reactionDelay Timesteps between each decision (minimum 1).
+     * @param maxError      Maximum aiming error, in pitch steps.
+     * @param maxSpeed      Maximum paddle speed, in pitch steps / timestep.
+     */
+    public void setDifficulty(int reactionDelay, int maxError, int maxSpeed) {
+        this.reactionDelay = Math.max(1, reactionDelay) ;
+        this.maxError = Math.max(0, maxError) ;
+        this.maxSpeed = Math.max(1, maxSpeed) ;
+    }
+
+    /**
+     * Method to predict the y coordinate at which a ball will reach the given x coordinate.
+     * The unbounded straight line trajectory is folded back into [wallMin, wallMax], which is
+     * equivalent to reflecting it off the walls as many times as necessary.
+     *
+     * @param ballX     Ball's x position.
+     * @param ballY     Ball's y position.
+     * @param velX      Ball's x velocity. Must be non-zero.
+     * @param velY      Ball's y velocity.
+     * @param targetX   x coordinate at which the intercept is required.
+     * @param wallMin   Smallest y coordinate the ball's centre can reach.
+     * @param wallMax   Largest y coordinate the ball's centre can reach.
+     * @return  The y coordinate of the ball when it reaches targetX.
+     */
+    public static int predictInterceptY(int ballX, int ballY, int velX, int velY, int targetX, int wallMin, int wallMax) {
+        double span = wallMax - wallMin ;
+        if (span <= 0) {
+            return wallMin ;
+        }
+        // Timesteps until the ball reaches the target, and where it would be with no walls
+        double steps = (double) (targetX - ballX) / velX ;
+        double unfolded = ballY - wallMin + steps * velY ;
+        // Fold into one period of the reflected path (length 2*span), then mirror the second half
+        double period = 2.0 * span ;
+        double folded = unfolded % period ;
+        if (folded < 0) {
+            folded += period ;
+        }
+        if (folded > span) {
+            folded = period - folded ;
+        }
+        return wallMin + (int) Math.round(folded) ;
+    }
+
+    /**
+     * Method to update the paddle for the next timestep.
+     * Every reactionDelay timesteps a new target is chosen: the predicted intercept (plus some error)
+     * if the ball is heading towards the paddle, or the centre of the pitch if not. The paddle then
+     * moves towards the target at no more than maxSpeed.
+     *
+     * @param ballX Ball's x position.
+     * @param ballY Ball's y position.
+     * @param velX  Ball's x velocity.
+     * @param velY  Ball's y velocity.
+     */
+    public void update(int ballX, int ballY, int velX, int velY) {
+        if (--ticksUntilDecision <= 0) {
+            ticksUntilDecision = reactionDelay ;
+            targetY = chooseTarget(ballX, ballY, velX, velY) ;
+        }
+        // Move towards the target, limited by the paddle's speed
+        int delta = targetY - positionY ;
+        if (delta > maxSpeed) {
+            delta = maxSpeed ;
+        } else if (delta < -maxSpeed) {
+            delta = -maxSpeed ;
+        }
+        positionY += delta ;
+    }
+
+    /**
+     * Method to choose where the paddle should head for.
+     * @return The target y coordinate for the paddle's centre.
+     */
+    private int chooseTarget(int ballX, int ballY, int velX, int velY) {
+        boolean approaching = velX != 0 && Integer.signum(paddleX - ballX) == Integer.signum(velX) ;
+        if (!approaching) {
+            // Return to the centre to cover as much of the pitch as possible
+            return (wallMin + wallMax) / 2 ;
+        }
+        int intercept = predictInterceptY(ballX, ballY, velX, velY, paddleX, wallMin, wallMax) ;
+        if (maxError > 0) {
+            intercept += random.nextInt(2 * maxError + 1) - maxError ;
+        }
+        return intercept ;
+    }
+
+    /**
+     * Method to return the y coordinate of the paddle's centre.
+     * @return Y position
+     */
+    public int getPositionY() {
+        return positionY;
+    }
+
+    /**
+     * Method to move the paddle directly, e.g. when restoring a saved match. The paddle heads for the new position until its next decision.
+     * @param positionY Y coordinate of the paddle's centre.
+     */
+    public void setPositionY(int positionY) {
+        this.positionY = positionY ;
+        this.targetY = positionY ;
+    }
+
+    /**
+     * Method to return the x coordinate at which the paddle meets the ball's centre.
+     * @return X position
+     */
+    public int getPaddleX() {
+        return paddleX;
+    }
+
+    /**
+     * Method to return the paddle's height.
+     * @return int Paddle's height
+     */
+    public int getPaddleHeight() {
+        return paddleHeight;
+    }
+}
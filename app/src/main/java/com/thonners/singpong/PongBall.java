@@ -23,6 +23,8 @@ public class PongBall {
     // Location and velocity components
     private int[] position = new int[2] ;
     private int[] velocity  = new int[2];    // Ball's velocity components. Units are pitch steps / timestep.
+    private boolean reflected = false ;     // Whether the ball was reflected in the last timestep
+    private int speedSquared ;              // Squared speed set by the serve, which reflections preserve
 
     /**
      * PongBall Default Constructor
@@ -50,18 +52,20 @@ public class PongBall {
         if(velocity[X] == 0) {
             Log.d(LOG_TAG, "Caught zero x component for velocity so calling initialise again...");
             initialise();
+            return;
         }
+        speedSquared = velocity[X] * velocity[X] + velocity[Y] * velocity[Y] ;
     }
 
     /**
-     * Method to return the location of the PongBall for the next timestep.
+     * Method to move the PongBall to its location for the next timestep.
      * Integrates the velocity and adds it to the previous position.
-     *
-     * @return  Position for next time step.
+     * The position array is updated in place, as this is called every frame.
      */
-    private int[] updatePosition() {
+    private void updatePosition() {
         // Integrate old position + velocity (timestep = 1) to get new position
-        return new int[]{position[X] + velocity[X] , position[Y] + velocity[Y]} ;
+        position[X] += velocity[X] ;
+        position[Y] += velocity[Y] ;
     }
 
     /**
@@ -71,20 +75,58 @@ public class PongBall {
      * v1 = v0 - 2*(v0 . n)*n
      * where v1 is the new velocity, v0 is the initial velocity, and n is the wall/paddle normal vector.
      *
-     * Calculations are done as doubles, until the final return where the values are cast back to ints.
-     *
-     * @return          int array of {xVel, yVel} for the ball's next timestep.
+     * Calculations are done as doubles, until the final assignment where the values are rounded back to ints
+     * (see reflect()), so the ball keeps its speed however it is reflected.
+     * The velocity array is updated in place, as this is called every frame.
      */
-    private int[] updateVelocity() {
+    private void updateVelocity() {
         // Reflection normal
-        double[] normal = pitch.getReflectionNormal(position[X], position[Y]) ;
+        double[] normal = pitch.getReflectionNormal(position[X], position[Y], velocity[X], velocity[Y]) ;
+        reflected = normal[X] != 0 || normal[Y] != 0 ;
+        if (!reflected) {
+            return ;
+        }
+        reflect(velocity, normal, speedSquared);
+    }
+
+    /**
+     * Method to reflect a velocity by a normal, in place: v1 = v0 - 2*(v0 . n)*n
+     * Casting v1 to ints would truncate both components towards zero, so the ball would lose speed on every
+     * bounce off an angled surface (e.g. 5 -> |(-2,-1)|), and could be left bouncing vertically with no X velocity.
+     * Instead, each component is rounded up or down, whichever pair of ints gives the speed closest to the
+     * given one (then closest to v1), and the X component is never left at zero.
+     * Reflections by walls and flat paddles are exact, so are unaffected.
+     * @param velocity      Velocity {x, y} to reflect. Units are pitch steps / timestep.
+     * @param normal        Unit normal of the surface.
+     * @param speedSquared  Squared speed to keep the ball at.
+     */
+    static void reflect(int[] velocity, double[] normal, int speedSquared) {
         // Factor to be multiplied to each of the normal vector's components before adding to previous velocity's components:
         double nFactor = -2.0*(velocity[X]*normal[X] + velocity[Y]*normal[Y]) ;
         double xComponent = velocity[X] + nFactor*normal[X] ;
         double yComponent = velocity[Y] + nFactor*normal[Y] ;
         //Log.d(LOG_TAG,"Current position: " + getPositionX() +", " + getPositionY() + ". Velocity = " + xComponent + ", " + yComponent);
-        // Cast to ints in the final return.
-        return new int[]{(int) xComponent, (int) yComponent} ;
+        int bestX = 0, bestY = 0 ;
+        long bestSpeedError = Long.MAX_VALUE ;
+        double bestDistance = Double.MAX_VALUE ;
+        for (int i = 0 ; i < 4 ; i++) {
+            int x = (int) ((i & 1) == 0 ? Math.floor(xComponent) : Math.ceil(xComponent)) ;
+            int y = (int) ((i & 2) == 0 ? Math.floor(yComponent) : Math.ceil(yComponent)) ;
+            long speedError = Math.abs((long) x * x + (long) y * y - speedSquared) ;
+            double distance = (x - xComponent) * (x - xComponent) + (y - yComponent) * (y - yComponent) ;
+            if (speedError < bestSpeedError || (speedError == bestSpeedError && distance < bestDistance)) {
+                bestX = x ;
+                bestY = y ;
+                bestSpeedError = speedError ;
+                bestDistance = distance ;
+            }
+        }
+        if (bestX == 0) {
+            // Keep the ball moving across the pitch, in the direction it was reflected (or back the way it came)
+            bestX = xComponent > 0 || (xComponent == 0 && velocity[X] < 0) ? 1 : -1 ;
+        }
+        velocity[X] = bestX ;
+        velocity[Y] = bestY ;
     }
 
 
@@ -93,8 +135,30 @@ public class PongBall {
      * Public method to update the position and velocity parameters of the ball.
      */
     public void update() {
-        velocity = updateVelocity();
-        position = updatePosition();
+        updateVelocity();
+        updatePosition();
+    }
+
+    /**
+     * Method to set the ball's position and velocity directly, e.g. when restoring a saved match.
+     * @param positionX X position
+     * @param positionY Y position
+     * @param velocityX X velocity (pitch steps / timestep)
+     * @param velocityY Y velocity (pitch steps / timestep)
+     */
+    public void setState(int positionX, int positionY, int velocityX, int velocityY) {
+        position = new int[]{positionX, positionY} ;
+        velocity[X] = velocityX ;
+        velocity[Y] = velocityY ;
+        speedSquared = velocityX * velocityX + velocityY * velocityY ;
+    }
+
+    /**
+     * Method to return whether the ball was reflected (by a wall, paddle or obstacle) in the last update.
+     * @return True if the ball bounced in the last timestep.
+     */
+    public boolean hasReflected() {
+        return reflected;
     }
 
     /**
@@ -112,6 +176,21 @@ public class PongBall {
         return position[1];
     }
 
+    /**
+     * Method to return the X component of the ball's velocity
+     * @return X velocity (pitch steps / timestep)
+     */
+    public int getVelocityX(){
+        return velocity[X];
+    }
+    /**
+     * Method to return the Y component of the ball's velocity
+     * @return Y velocity (pitch steps / timestep)
+     */
+    public int getVelocityY(){
+        return velocity[Y];
+    }
+
     /**
      * Method to return the ball's radius
      * @return int Ball's radius
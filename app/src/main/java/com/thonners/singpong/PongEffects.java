@@ -0,0 +1,256 @@
+package com.thonners.singpong;
+
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+
+import java.util.Random;
+
+/**
+ * Class to draw the visual effects on the pitch: sparks when the ball bounces, bursts when a goal is
+ * scored, and a trail behind the ball.
+ *
+ * Effects are drawn every frame from the game thread, so nothing is allocated after construction.
+ * All particles live in preallocated primitive arrays, with a free-list of unused slots. There is a
+ * hard cap of MAX_PARTICLES; when the pool is running low new effects are thinned out, and when it is
+ * empty they are dropped, rather than replacing live particles or growing the arrays. Particles are
+ * updated in a single loop, and drawn with one drawPoints call per particle kind.
+ *
+ * @author Thonners
+ * @since 18/10/26
+ * @version 1.0
+ */
+public class PongEffects {
+
+    private static final int MAX_PARTICLES = 256 ;
+    private static final int TRAIL_LENGTH = 16 ;            // Number of recent ball positions in the trail
+
+    // Particle kinds, each drawn in its own batch
+    private static final int KIND_SPARK = 0 ;
+    private static final int KIND_BURST = 1 ;
+
+    private static final int SPARKS_PER_BOUNCE = 12 ;
+    private static final int SPARK_LIFE = 15 ;              // Timesteps
+    private static final float SPARK_SPEED = 8f ;           // Pitch steps / timestep
+    private static final float SPARK_SPREAD = 1.2f ;        // Maximum deviation from the ball's direction, radians
+    private static final int PARTICLES_PER_BURST = 96 ;
+    private static final int BURST_LIFE = 40 ;
+    private static final float BURST_SPEED = 12f ;
+    private static final float DRAG = 0.92f ;               // Velocity multiplier per timestep
+
+    private final Random random = new Random() ;
+
+    // Particle pool. A slot is live while life > 0, otherwise it is on the free-list.
+    private final float[] x = new float[MAX_PARTICLES] ;
+    private final float[] y = new float[MAX_PARTICLES] ;
+    private final float[] vx = new float[MAX_PARTICLES] ;
+    private final float[] vy = new float[MAX_PARTICLES] ;
+    private final int[] life = new int[MAX_PARTICLES] ;
+    private final int[] kind = new int[MAX_PARTICLES] ;
+    private final int[] nextFree = new int[MAX_PARTICLES] ;
+    private int freeHead ;
+    private int freeCount ;
+
+    // Point batches for drawing, {x1, y1, x2, y2, ...}
+    private final float[] sparkPoints = new float[2 * MAX_PARTICLES] ;
+    private final float[] burstPoints = new float[2 * MAX_PARTICLES] ;
+
+    // Ring buffer of recent ball positions, {x1, y1, x2, y2, ...}, and the line segments drawn between them
+    private final float[] trail = new float[2 * TRAIL_LENGTH] ;
+    private final float[] trailLines = new float[4 * (TRAIL_LENGTH - 1)] ;
+    private int trailHead = 0 ;     // Index (in positions) of the next position to write
+    private int trailCount = 0 ;
+
+    private final Paint paintSpark = new Paint(Paint.ANTI_ALIAS_FLAG) ;
+    private final Paint paintBurst = new Paint(Paint.ANTI_ALIAS_FLAG) ;
+    private final Paint paintTrail = new Paint(Paint.ANTI_ALIAS_FLAG) ;
+
+    /**
+     * PongEffects constructor.
+     * @param ballRadius    Radius of the ball, used to size the trail.
+     */
+    public PongEffects(int ballRadius) {
+        paintSpark.setColor(Color.YELLOW);
+        paintSpark.setStrokeWidth(6f);
+        paintSpark.setStrokeCap(Paint.Cap.ROUND);
+        paintBurst.setColor(Color.WHITE);
+        paintBurst.setStrokeWidth(8f);
+        paintBurst.setStrokeCap(Paint.Cap.ROUND);
+        paintTrail.setColor(Color.RED);
+        paintTrail.setAlpha(96);
+        paintTrail.setStrokeWidth(ballRadius);
+        paintTrail.setStrokeCap(Paint.Cap.ROUND);
+        clear();
+    }
+
+    /**
+     * Method to remove all particles and the trail, e.g. when the pitch is reset.
+     */
+    public void clear() {
+        for (int i = 0 ; i < MAX_PARTICLES ; i++) {
+            life[i] = 0 ;
+            nextFree[i] = i + 1 ;   // MAX_PARTICLES marks the end of the list
+        }
+        freeHead = 0 ;
+        freeCount = MAX_PARTICLES ;
+        clearTrail();
+    }
+
+    /**
+     * Method to remove the trail only, e.g. when the ball is re-served, so that the old and new positions
+     * aren't joined. Particles (such as a goal burst) carry on.
+     */
+    public void clearTrail() {
+        trailHead = 0 ;
+        trailCount = 0 ;
+    }
+
+    /**
+     * Method to add sparks where the ball has bounced.
+     * @param ballX     Ball's x position.
+     * @param ballY     Ball's y position.
+     * @param dirX      X component of the ball's direction after the bounce.
+     * @param dirY      Y component of the ball's direction after the bounce.
+     */
+    public void addBounce(float ballX, float ballY, float dirX, float dirY) {
+        double heading = Math.atan2(dirY, dirX) ;
+        int count = allowance(SPARKS_PER_BOUNCE) ;
+        for (int n = 0 ; n < count ; n++) {
+            double angle = heading + (2f * random.nextFloat() - 1f) * SPARK_SPREAD ;
+            float speed = SPARK_SPEED * (0.5f + random.nextFloat()) ;
+            spawn(KIND_SPARK, ballX, ballY, (float) Math.cos(angle) * speed, (float) Math.sin(angle) * speed, SPARK_LIFE) ;
+        }
+    }
+
+    /**
+     * Method to add a burst of particles where a goal has been scored.
+     * @param goalX     X position of the ball when the goal was scored.
+     * @param goalY     Y position of the ball when the goal was scored.
+     */
+    public void addGoalBurst(float goalX, float goalY) {
+        int count = allowance(PARTICLES_PER_BURST) ;
+        for (int n = 0 ; n < count ; n++) {
+            double angle = 2.0 * Math.PI * random.nextFloat() ;
+            float speed = BURST_SPEED * random.nextFloat() ;
+            spawn(KIND_BURST, goalX, goalY, (float) Math.cos(angle) * speed, (float) Math.sin(angle) * speed, BURST_LIFE / 2 + random.nextInt(BURST_LIFE / 2)) ;
+        }
+    }
+
+    /**
+     * Method to add the ball's current position to the trail.
+     * @param ballX     Ball's x position.
+     * @param ballY     Ball's y position.
+     */
+    public void addTrailPoint(float ballX, float ballY) {
+        trail[2 * trailHead] = ballX ;
+        trail[2 * trailHead + 1] = ballY ;
+        trailHead = (trailHead + 1) % TRAIL_LENGTH ;
+        if (trailCount < TRAIL_LENGTH) {
+            trailCount++ ;
+        }
+    }
+
+    /**
+     * Method to advance all live particles by one timestep, returning any which have expired to the free-list.
+     */
+    public void update() {
+        for (int i = 0 ; i < MAX_PARTICLES ; i++) {
+            if (life[i] <= 0) {
+                continue ;
+            }
+            x[i] += vx[i] ;
+            y[i] += vy[i] ;
+            vx[i] *= DRAG ;
+            vy[i] *= DRAG ;
+            if (--life[i] == 0) {
+                nextFree[i] = freeHead ;
+                freeHead = i ;
+                freeCount++ ;
+            }
+        }
+    }
+
+    /**
+     * Method to draw the trail and all live particles.
+     * @param canvas    Canvas to draw on.
+     */
+    public void draw(Canvas canvas) {
+        // Trail, from oldest to newest position
+        int segments = 0 ;
+        int oldest = (trailHead - trailCount + TRAIL_LENGTH) % TRAIL_LENGTH ;
+        for (int n = 1 ; n < trailCount ; n++) {
+            int from = (oldest + n - 1) % TRAIL_LENGTH ;
+            int to = (oldest + n) % TRAIL_LENGTH ;
+            trailLines[4 * segments] = trail[2 * from] ;
+            trailLines[4 * segments + 1] = trail[2 * from + 1] ;
+            trailLines[4 * segments + 2] = trail[2 * to] ;
+            trailLines[4 * segments + 3] = trail[2 * to + 1] ;
+            segments++ ;
+        }
+        if (segments > 0) {
+            canvas.drawLines(trailLines, 0, 4 * segments, paintTrail);
+        }
+
+        // Particles, batched by kind
+        int sparks = 0 ;
+        int bursts = 0 ;
+        for (int i = 0 ; i < MAX_PARTICLES ; i++) {
+            if (life[i] <= 0) {
+                continue ;
+            }
+            if (kind[i] == KIND_SPARK) {
+                sparkPoints[sparks++] = x[i] ;
+                sparkPoints[sparks++] = y[i] ;
+            } else {
+                burstPoints[bursts++] = x[i] ;
+                burstPoints[bursts++] = y[i] ;
+            }
+        }
+        if (sparks > 0) {
+            canvas.drawPoints(sparkPoints, 0, sparks, paintSpark);
+        }
+        if (bursts > 0) {
+            canvas.drawPoints(burstPoints, 0, bursts, paintBurst);
+        }
+    }
+
+    /**
+     * Method to return the number of live particles.
+     * @return Live particle count.
+     */
+    public int getLiveParticleCount() {
+        return MAX_PARTICLES - freeCount ;
+    }
+
+    /**
+     * Method to decide how many of the requested particles can be spawned.
+     * With less than a quarter of the pool free, only half the request is granted, so that effects
+     * thin out rather than stopping abruptly when the cap is reached.
+     * @param requested Number of particles requested.
+     * @return  Number of particles to spawn.
+     */
+    private int allowance(int requested) {
+        if (freeCount < MAX_PARTICLES / 4) {
+            requested /= 2 ;
+        }
+        return Math.min(requested, freeCount) ;
+    }
+
+    /**
+     * Method to take a slot from the free-list and initialise a particle in it.
+     */
+    private void spawn(int particleKind, float startX, float startY, float velX, float velY, int lifetime) {
+        if (freeHead == MAX_PARTICLES) {
+            return ;
+        }
+        int i = freeHead ;
+        freeHead = nextFree[i] ;
+        freeCount-- ;
+        kind[i] = particleKind ;
+        x[i] = startX ;
+        y[i] = startY ;
+        vx[i] = velX ;
+        vy[i] = velY ;
+        life[i] = lifetime ;
+    }
+}
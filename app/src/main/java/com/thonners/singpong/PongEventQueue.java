@@ -0,0 +1,122 @@
+package com.thonners.singpong;
+
+import android.os.Handler;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Class to pass game events (goals, etc.) from the game thread to the UI thread.
+ *
+ * The game thread must never touch the Android UI APIs, or wait for the UI thread. Events are
+ * written into a preallocated ring buffer as they happen, and published together at the end of each
+ * frame with endFrame(). If there isn't already a drain waiting, endFrame() posts one to the UI
+ * thread's Handler, which hands every published event to the listener in a single pass.
+ *
+ * Exactly one thread may post events (the game thread), and the listener is only called on the
+ * Handler's thread. No locks are taken. If the buffer is full the event is dropped and counted, so
+ * the game loop is never blocked.
+ *
+ * @author Thonners
+ * @since 18/10/26
+ * @version 1.0
+ */
+public class PongEventQueue {
+
+    // Event types
+    public static final int EVENT_GOAL_SCORED = 1 ;   // Argument: index of the scoring player
+
+    private static final int CAPACITY = 64 ;           // Must be a power of two
+    private static final int MASK = CAPACITY - 1 ;
+
+    /**
+     * Interface to receive game events, on the UI thread.
+     */
+    public interface Listener {
+        /**
+         * Called on the UI thread for each event, in the order they were posted.
+         * @param type      Event type, e.g. EVENT_GOAL_SCORED.
+         * @param argument  Event argument. Meaning depends on the type.
+         */
+        void onGameEvent(int type, int argument) ;
+    }
+
+    private final int[] types = new int[CAPACITY] ;
+    private final int[] arguments = new int[CAPACITY] ;
+    private volatile int published = 0 ;   // Events before this sequence number can be read by the UI thread
+    private volatile int consumed = 0 ;    // Events before this sequence number have been handled
+    private int pending = 0 ;              // Game thread only: next sequence number to write
+    private int dropped = 0 ;              // Game thread only
+
+    private final AtomicBoolean drainScheduled = new AtomicBoolean(false) ;
+    private final Handler handler ;
+    private final Listener listener ;
+    private final Runnable drainRunnable = new Runnable() {
+        @Override
+        public void run() {
+            drain();
+        }
+    };
+
+    /**
+     * PongEventQueue constructor.
+     * @param handler   Handler for the UI thread.
+     * @param listener  Listener to receive the events on the UI thread.
+     */
+    public PongEventQueue(Handler handler, Listener listener) {
+        this.handler = handler ;
+        this.listener = listener ;
+    }
+
+    /**
+     * Method to add an event. Game thread only. The event isn't seen by the UI thread until endFrame() is called.
+     * @param type      Event type.
+     * @param argument  Event argument.
+     */
+    public void post(int type, int argument) {
+        if (pending - consumed >= CAPACITY) {
+            // UI thread has fallen behind. Drop the event rather than block the game loop.
+            dropped++ ;
+            return ;
+        }
+        types[pending & MASK] = type ;
+        arguments[pending & MASK] = argument ;
+        pending++ ;
+    }
+
+    /**
+     * Method to publish the events posted during this frame, and schedule a drain on the UI thread
+     * if there isn't one waiting already. Game thread only. Does nothing if no events were posted.
+     */
+    public void endFrame() {
+        if (pending == published) {
+            return ;
+        }
+        published = pending ;
+        if (drainScheduled.compareAndSet(false, true)) {
+            handler.post(drainRunnable) ;
+        }
+    }
+
+    /**
+     * Method to return the number of events dropped because the queue was full. Game thread only.
+     * @return  Number of dropped events.
+     */
+    public int getDroppedCount() {
+        return dropped ;
+    }
+
+    /**
+     * Method to hand every published event to the listener. UI thread only.
+     */
+    private void drain() {
+        // Clear the flag before reading, so events published during the drain schedule another one
+        drainScheduled.set(false) ;
+        int end = published ;
+        int next = consumed ;
+        while (next != end) {
+            listener.onGameEvent(types[next & MASK], arguments[next & MASK]) ;
+            next++ ;
+        }
+        consumed = next ;
+    }
+}
@@ -0,0 +1,441 @@
+package com.thonners.singpong;
+
+import android.graphics.Canvas;
+import android.graphics.Paint;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Class defining the obstacles on a pitch, loaded from a level file.
+ *
+ * Level files are plain text, with one shape per line. Coordinates are fractions of the pitch width
+ * (x) and height (y), so the same level fits any screen. Circle radii are fractions of the pitch height.
+ * Blank lines and lines starting with '#' are ignored.
+ *
+ *      circle <x> <y> <radius>
+ *      reflector <x1> <y1> <x2> <y2>
+ *      polygon <x1> <y1> <x2> <y2> <x3> <y3> [...]
+ *
+ * When the pitch is created, compile() scales every shape to pitch coordinates (caching its edge
+ * normals), and builds a uniform grid over the pitch, each cell of which lists the shapes the ball's
+ * centre could be touching while in that cell. getReflectionNormal then only tests the shapes in the
+ * ball's cell, so its cost depends on how crowded the level is around the ball, not on the number of
+ * shapes in the level. compile() costs one pass over the shapes, independent of the pitch's resolution.
+ *
+ * @author Thonners
+ * @since 18/10/26
+ * @version 1.0
+ */
+public class PongLevel {
+
+    private List<Shape> shapes = new ArrayList<Shape>() ;
+
+    // Spatial index, built by compile(). Cell c lists the shapes cellShapes[cellStart[c]] to cellShapes[cellStart[c + 1] - 1].
+    private int cellSize ;
+    private int columns ;
+    private int rows ;
+    private int[] cellStart ;
+    private Shape[] cellShapes ;
+    private int ballRadius ;
+
+    // Scratch normals returned by getReflectionNormal, so it doesn't allocate every timestep
+    private final double[] contactNormal = new double[2] ;
+    private final double[] candidateNormal = new double[2] ;
+
+    /**
+     * Method to load a level from a level file.
+     * @param reader    Reader for the level file.
+     * @return  The level described by the file.
+     * @throws IOException  If the file can't be read or contains an invalid line.
+     */
+    public static PongLevel load(Reader reader) throws IOException {
+        PongLevel level = new PongLevel() ;
+        BufferedReader lines = new BufferedReader(reader) ;
+        String line ;
+        int lineNumber = 0 ;
+        while ((line = lines.readLine()) != null) {
+            lineNumber++ ;
+            line = line.trim() ;
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue ;
+            }
+            String[] tokens = line.split("\\s+") ;
+            try {
+                level.shapes.add(parseShape(tokens)) ;
+            } catch (IllegalArgumentException e) {
+                throw new IOException("Invalid level file, line " + lineNumber + ": " + e.getMessage()) ;
+            }
+        }
+        return level ;
+    }
+
+    /**
+     * Method to create a shape from the tokens of a single line of a level file.
+     * @param tokens    Whitespace separated tokens, the first of which is the shape type.
+     * @return  The shape.
+     */
+    private static Shape parseShape(String[] tokens) {
+        double[] values = new double[tokens.length - 1] ;
+        for (int i = 1 ; i < tokens.length ; i++) {
+            values[i - 1] = Double.parseDouble(tokens[i]) ;    // NumberFormatException is an IllegalArgumentException
+        }
+        if (tokens[0].equals("circle")) {
+            if (values.length != 3) {
+                throw new IllegalArgumentException("circle requires <x> <y> <radius>") ;
+            }
+            return new Circle(values[0], values[1], values[2]) ;
+        } else if (tokens[0].equals("reflector")) {
+            if (values.length != 4) {
+                throw new IllegalArgumentException("reflector requires <x1> <y1> <x2> <y2>") ;
+            }
+            return new Polygon(values, false) ;
+        } else if (tokens[0].equals("polygon")) {
+            if (values.length < 6 || values.length % 2 != 0) {
+                throw new IllegalArgumentException("polygon requires at least three <x> <y> pairs") ;
+            }
+            return new Polygon(values, true) ;
+        }
+        throw new IllegalArgumentException("unknown shape '" + tokens[0] + "'") ;
+    }
+
+    /**
+     * Method to return the number of shapes in the level.
+     * @return  Number of shapes.
+     */
+    public int getShapeCount() {
+        return shapes.size() ;
+    }
+
+    /**
+     * Method to scale the level's shapes to the pitch, and build the spatial index used by getReflectionNormal.
+     * Each shape is added to every grid cell overlapping its bounding box, inflated by the ball's radius.
+     *
+     * If the calling thread is interrupted, compiling is abandoned between shapes and the level is left
+     * empty (so getReflectionNormal finds nothing), allowing the thread to be stopped promptly.
+     *
+     * @param width         Pitch width.
+     * @param height        Pitch height.
+     * @param ballRadius    Radius of the ball, by which each shape is inflated.
+     * @return  True if the level was compiled, or false if the thread was interrupted.
+     */
+    public boolean compile(int width, int height, int ballRadius) {
+        cellStart = null ;
+        cellShapes = null ;
+        this.ballRadius = ballRadius ;
+        cellSize = Math.max(1, ballRadius) ;
+        columns = (width + cellSize - 1) / cellSize ;
+        rows = (height + cellSize - 1) / cellSize ;
+        // Count the shapes in each cell, then fill them in (i.e. compressed rows, so there's one array for all cells)
+        int[] starts = new int[columns * rows + 1] ;
+        int[][] shapeCells = new int[shapes.size()][] ;
+        for (int s = 0 ; s < shapes.size() ; s++) {
+            if (Thread.currentThread().isInterrupted()) {
+                return false ;
+            }
+            Shape shape = shapes.get(s) ;
+            shape.scale(width, height) ;
+            int[] cells = shapeCells[s] = new int[4] ;
+            cells[0] = Math.max(0, (int) Math.floor((shape.getLeft() - ballRadius) / cellSize)) ;
+            cells[1] = Math.max(0, (int) Math.floor((shape.getTop() - ballRadius) / cellSize)) ;
+            cells[2] = Math.min(columns - 1, (int) Math.floor((shape.getRight() + ballRadius) / cellSize)) ;
+            cells[3] = Math.min(rows - 1, (int) Math.floor((shape.getBottom() + ballRadius) / cellSize)) ;
+            for (int column = cells[0] ; column <= cells[2] ; column++) {
+                for (int row = cells[1] ; row <= cells[3] ; row++) {
+                    starts[row * columns + column + 1]++ ;
+                }
+            }
+        }
+        for (int c = 0 ; c < columns * rows ; c++) {
+            starts[c + 1] += starts[c] ;
+        }
+        Shape[] entries = new Shape[starts[columns * rows]] ;
+        int[] next = new int[columns * rows] ;
+        System.arraycopy(starts, 0, next, 0, next.length);
+        for (int s = 0 ; s < shapes.size() ; s++) {
+            int[] cells = shapeCells[s] ;
+            for (int column = cells[0] ; column <= cells[2] ; column++) {
+                for (int row = cells[1] ; row <= cells[3] ; row++) {
+                    entries[next[row * columns + column]++] = shapes.get(s) ;
+                }
+            }
+        }
+        cellStart = starts ;
+        cellShapes = entries ;
+        return true ;
+    }
+
+    /**
+     * Method to find the obstacle the ball is touching, if any. Must be called after compile().
+     * Only the shapes in the ball's grid cell are tested. If the ball is touching more than one, the nearest wins.
+     * Nothing is allocated, so it can be called every timestep, but the returned array is reused by the next call.
+     * @param x X position of the ball's centre.
+     * @param y Y position of the ball's centre.
+     * @return  The unit normal, pointing out of the obstacle at the point nearest the ball, or null if the ball isn't touching one.
+     */
+    public double[] getReflectionNormal(int x, int y) {
+        if (cellStart == null) {
+            return null ;
+        }
+        int column = Math.min(columns - 1, Math.max(0, x / cellSize)) ;
+        int row = Math.min(rows - 1, Math.max(0, y / cellSize)) ;
+        int cell = row * columns + column ;
+        double nearest = Double.MAX_VALUE ;
+        for (int k = cellStart[cell] ; k < cellStart[cell + 1] ; k++) {
+            double distance = cellShapes[k].getContact(x, y, ballRadius, candidateNormal) ;
+            if (distance < nearest) {
+                nearest = distance ;
+                contactNormal[0] = candidateNormal[0] ;
+                contactNormal[1] = candidateNormal[1] ;
+            }
+        }
+        return nearest == Double.MAX_VALUE ? null : contactNormal ;
+    }
+
+    /**
+     * Method to draw the level's shapes. Must be called after compile(), which sets their size on the pitch.
+     * Nothing is allocated, so it can be called every frame.
+     * @param canvas    Canvas to draw on.
+     * @param paint     Paint to draw the shapes with. Reflectors and polygon edges use its stroke width.
+     */
+    public void draw(Canvas canvas, Paint paint) {
+        for (int i = 0 ; i < shapes.size() ; i++) {
+            shapes.get(i).draw(canvas, paint) ;
+        }
+    }
+
+    /**
+     * A shape which can be scaled to the pitch, tested for contact with the ball, and then drawn.
+     */
+    private interface Shape {
+        /** Scale the shape to pitch coordinates, caching anything getContact and draw need. */
+        void scale(int width, int height) ;
+        /** Bounding box in pitch coordinates, set by scale(). */
+        double getLeft() ;
+        double getTop() ;
+        double getRight() ;
+        double getBottom() ;
+        /**
+         * Find the distance from a point to the shape (zero inside it). If it's within reach, the outward unit
+         * normal at the nearest point is written into normal. Returns Double.MAX_VALUE if it's out of reach.
+         */
+        double getContact(double x, double y, double reach, double[] normal) ;
+        void draw(Canvas canvas, Paint paint) ;
+    }
+
+    /**
+     * Circular bumper. The normal at any point is along the line from the centre.
+     */
+    private static class Circle implements Shape {
+        private double x ;
+        private double y ;
+        private double radius ;
+        // Pitch coordinates, set by scale()
+        private double centreX ;
+        private double centreY ;
+        private double pitchRadius ;
+
+        Circle(double x, double y, double radius) {
+            this.x = x ;
+            this.y = y ;
+            this.radius = radius ;
+        }
+
+        @Override
+        public void scale(int width, int height) {
+            centreX = x * width ;
+            centreY = y * height ;
+            pitchRadius = radius * height ;
+        }
+
+        @Override
+        public double getLeft() {
+            return centreX - pitchRadius ;
+        }
+
+        @Override
+        public double getTop() {
+            return centreY - pitchRadius ;
+        }
+
+        @Override
+        public double getRight() {
+            return centreX + pitchRadius ;
+        }
+
+        @Override
+        public double getBottom() {
+            return centreY + pitchRadius ;
+        }
+
+        @Override
+        public double getContact(double x, double y, double reach, double[] normal) {
+            double dx = x - centreX ;
+            double dy = y - centreY ;
+            double fromCentre = Math.sqrt(dx * dx + dy * dy) ;
+            double distance = Math.max(0, fromCentre - pitchRadius) ;
+            if (distance > reach) {
+                return Double.MAX_VALUE ;
+            }
+            if (fromCentre == 0) {
+                // Dead centre, so any direction is out
+                normal[0] = 1 ;
+                normal[1] = 0 ;
+            } else {
+                normal[0] = dx / fromCentre ;
+                normal[1] = dy / fromCentre ;
+            }
+            return distance ;
+        }
+
+        @Override
+        public void draw(Canvas canvas, Paint paint) {
+            canvas.drawCircle((float) centreX, (float) centreY, (float) pitchRadius, paint) ;
+        }
+    }
+
+    /**
+     * Polygon, or a single straight reflector (an open polygon with two vertices).
+     * Outside the shape, the normal is along the line from the nearest point on its boundary. Inside a
+     * closed polygon, the normal is that of the nearest edge.
+     */
+    private static class Polygon implements Shape {
+        private double[] vertices ;    // {x1, y1, x2, y2, ...} as fractions of the pitch
+        private boolean closed ;
+        private int edges ;
+        // Pitch coordinates, set by scale(). Edge k runs from vertex k to vertex k + 1 (wrapping if closed).
+        private double[] px ;
+        private double[] py ;
+        private double[] edgeX ;
+        private double[] edgeY ;
+        private double[] edgeLengthSquared ;
+        private double[] edgeNormalX ;    // Outward unit normals
+        private double[] edgeNormalY ;
+        private double left, top, right, bottom ;
+        private float[] drawLines ;    // {x1, y1, x2, y2} for each edge
+
+        Polygon(double[] vertices, boolean closed) {
+            this.vertices = vertices ;
+            this.closed = closed ;
+            int count = vertices.length / 2 ;
+            this.edges = closed ? count : count - 1 ;
+            this.px = new double[count] ;
+            this.py = new double[count] ;
+            this.edgeX = new double[edges] ;
+            this.edgeY = new double[edges] ;
+            this.edgeLengthSquared = new double[edges] ;
+            this.edgeNormalX = new double[edges] ;
+            this.edgeNormalY = new double[edges] ;
+            this.drawLines = new float[4 * edges] ;
+        }
+
+        @Override
+        public void scale(int width, int height) {
+            int count = px.length ;
+            left = Double.MAX_VALUE ;
+            right = -Double.MAX_VALUE ;
+            top = Double.MAX_VALUE ;
+            bottom = -Double.MAX_VALUE ;
+            for (int k = 0 ; k < count ; k++) {
+                px[k] = vertices[2 * k] * width ;
+                py[k] = vertices[2 * k + 1] * height ;
+                left = Math.min(left, px[k]) ;
+                right = Math.max(right, px[k]) ;
+                top = Math.min(top, py[k]) ;
+                bottom = Math.max(bottom, py[k]) ;
+            }
+            double signedArea = 0 ;
+            for (int k = 0 ; k < count ; k++) {
+                int next = (k + 1) % count ;
+                signedArea += px[k] * py[next] - px[next] * py[k] ;
+            }
+            // The sign of the outward normals depends on the winding order
+            double orientation = signedArea >= 0 ? 1.0 : -1.0 ;
+            for (int k = 0 ; k < edges ; k++) {
+                int next = (k + 1) % count ;
+                edgeX[k] = px[next] - px[k] ;
+                edgeY[k] = py[next] - py[k] ;
+                edgeLengthSquared[k] = edgeX[k] * edgeX[k] + edgeY[k] * edgeY[k] ;
+                double length = Math.sqrt(edgeLengthSquared[k]) ;
+                edgeNormalX[k] = length == 0 ? 0 : orientation * edgeY[k] / length ;
+                edgeNormalY[k] = length == 0 ? 0 : -orientation * edgeX[k] / length ;
+                drawLines[4 * k] = (float) px[k] ;
+                drawLines[4 * k + 1] = (float) py[k] ;
+                drawLines[4 * k + 2] = (float) px[next] ;
+                drawLines[4 * k + 3] = (float) py[next] ;
+            }
+        }
+
+        @Override
+        public double getLeft() {
+            return left ;
+        }
+
+        @Override
+        public double getTop() {
+            return top ;
+        }
+
+        @Override
+        public double getRight() {
+            return right ;
+        }
+
+        @Override
+        public double getBottom() {
+            return bottom ;
+        }
+
+        @Override
+        public double getContact(double x, double y, double reach, double[] normal) {
+            // Find the nearest edge, and whether the point is inside (even-odd rule)
+            double nearestSquared = Double.MAX_VALUE ;
+            double nearestX = 0, nearestY = 0 ;
+            int nearestEdge = 0 ;
+            boolean inside = false ;
+            for (int k = 0 ; k < edges ; k++) {
+                double t = edgeLengthSquared[k] == 0 ? 0 : ((x - px[k]) * edgeX[k] + (y - py[k]) * edgeY[k]) / edgeLengthSquared[k] ;
+                t = Math.max(0, Math.min(1, t)) ;
+                double cx = px[k] + t * edgeX[k] ;
+                double cy = py[k] + t * edgeY[k] ;
+                double distanceSquared = (x - cx) * (x - cx) + (y - cy) * (y - cy) ;
+                if (distanceSquared < nearestSquared) {
+                    nearestSquared = distanceSquared ;
+                    nearestX = cx ;
+                    nearestY = cy ;
+                    nearestEdge = k ;
+                }
+                int next = (k + 1) % px.length ;
+                if (closed && ((py[k] > y) != (py[next] > y)) && (x < px[k] + (y - py[k]) * edgeX[k] / edgeY[k])) {
+                    inside = !inside ;
+                }
+            }
+            if (inside) {
+                normal[0] = edgeNormalX[nearestEdge] ;
+                normal[1] = edgeNormalY[nearestEdge] ;
+                return 0 ;
+            }
+            if (nearestSquared > reach * reach) {
+                return Double.MAX_VALUE ;
+            }
+            double distance = Math.sqrt(nearestSquared) ;
+            if (distance == 0) {
+                // On the boundary
+                normal[0] = edgeNormalX[nearestEdge] ;
+                normal[1] = edgeNormalY[nearestEdge] ;
+            } else {
+                normal[0] = (x - nearestX) / distance ;
+                normal[1] = (y - nearestY) / distance ;
+            }
+            return distance ;
+        }
+
+        @Override
+        public void draw(Canvas canvas, Paint paint) {
+            canvas.drawLines(drawLines, paint) ;
+        }
+    }
+}
@@ -4,13 +4,18 @@ import android.content.Context;
 import android.graphics.Canvas;
 import android.graphics.Color;
 import android.graphics.Paint;
+import android.os.Handler;
+import android.os.Looper;
 import android.util.AttributeSet;
 import android.util.Log;
 import android.view.SurfaceHolder;
 import android.view.SurfaceView;
 import android.widget.Toast;
 
+import java.io.IOException;
+import java.io.InputStreamReader;
 import java.util.Locale;
+import java.util.Random;
 
 /**
  * Class to create the pitch on which the game of pong is to be played.
@@ -24,20 +29,78 @@ public class PongPitchSurfaceView extends SurfaceView implements Runnable {
 
     private Thread thread = null;
     private SurfaceHolder surfaceHolder;
+    // Game thread lifecycle. The thread is long-lived, and waits on lifecycleLock whenever it isn't running
+    // (paused) or there is no surface to draw on. All four flags are guarded by lifecycleLock.
+    private final Object lifecycleLock = new Object();
     volatile boolean running = false;
+    private boolean surfaceReady = false;
+    private boolean inFrame = false;        // True while the game thread is updating/drawing a frame
+    private boolean alive = true;           // Cleared to end the game thread for good
+    private long resumeNanos = 0;           // Time of the last resume, for measuring the time to the first frame
+
+    // Match state, saved in a Bundle when paused and restored when the pitch is next built
+    private static final int MATCH_STATE_VERSION = 3;
+    private static final int MATCH_STATE_LENGTH = 16;
+    private int[] scores = new int[2];
+    private int[] pendingMatchState = null;
+
+    // Match statistics, recorded in the stats store when a player reaches WINNING_SCORE
+    private static final int WINNING_SCORE = 5 ;
+    private MatchStatsStore statsStore ;
+    // Game thread only (or from the UI thread while the game thread is between frames, see saveMatchState())
+    private int[] matchRallies = new int[2];
+    private final Object pitchRangeLock = new Object();
+    private float[] matchMinPitch = new float[2];           // Guarded by pitchRangeLock. 0 if no pitch yet.
+    private float[] matchMaxPitch = new float[2];
     private Paint paintBall = new Paint(Paint.ANTI_ALIAS_FLAG);
     private PongBall ball = new PongBall(this);
     private int ballRadius = ball.getBallRadius();
     private PlayActivity playActivity ;
+    private PongEventQueue eventQueue ;    // Events for the UI thread. The game thread mustn't call the UI directly.
+    private PongEffects effects = new PongEffects(ballRadius);
+
+    // Players' recent pitch, drawn over the top of the pitch
+    private PitchHistoryOverlay pitchOverlay = new PitchHistoryOverlay();
+    private int pitchOverlayLeft ;
+    private int pitchOverlayTop ;
+    private volatile boolean pitchOverlayEnabled = true;
+
+    // Render path timing, logged every FRAME_TIMER_INTERVAL frames
+    private static final int FRAME_TIMER_INTERVAL = 300 ;
+    private FrameTimer frameTimer = new FrameTimer("Frame", 16666667L, FRAME_TIMER_INTERVAL);
+    private FrameTimer pitchOverlayTimer = new FrameTimer("Pitch overlay", 1000000L, FRAME_TIMER_INTERVAL);
+
+    // Computer controlled opponent, on the right-hand side
+    private PongAIPaddle aiPaddle ;
+    private Paint paintPaddle = new Paint(Paint.ANTI_ALIAS_FLAG);
+    private static final int PADDLE_WIDTH = 20 ;
+    private static final int PADDLE_INSET = 40 ;    // Gap between the paddle and the edge of the pitch
+    // Rows of the pitch array currently marked as the AI paddle (empty range when stampedPaddleBottom < stampedPaddleTop)
+    private int stampedPaddleTop = 0 ;
+    private int stampedPaddleBottom = -1 ;
 
     private static final String LOG_TAG = "PongPitchSurfaceView" ;
 
+    // Player identifiers
+    public static final int PLAYER_ONE = 0 ;
+    public static final int PLAYER_TWO = 1 ;
+    // Player on each side of the pitch. The singer plays from the left, against the computer on the right.
+    private static final int LEFT_PLAYER = PLAYER_ONE ;
+    private static final int RIGHT_PLAYER = PLAYER_TWO ;
+
     // Pitch params (dictated by the screen)
     private int height ;
     private int width ;
 
     private int discretisation = 1 ;   // Simplify the pitch by dividing into squares of <discretisation> pixels
 
+    // Obstacles on the pitch, loaded from the level file. Loaded, compiled, queried and drawn on the game thread only.
+    private PongLevel level ;
+    private Paint paintObstacle = new Paint(Paint.ANTI_ALIAS_FLAG);
+    // Pitch array the level hasn't been compiled for yet, or null. Guarded by lifecycleLock.
+    // The level is loaded from a resource the first time, so it is done by the game thread (before the first frame) rather than in surfaceChanged.
+    private int[][] uncompiledPitch = null ;
+
     // Pitch Array
     private int[][] pitch ; // Array storing the pitch. 0 defines regular pitch, integers define walls / paddles. [x][y], starting bottom left to top right
     private static final int PITCH_SURFACE = 0 ;
@@ -91,12 +154,20 @@ public class PongPitchSurfaceView extends SurfaceView implements Runnable {
 
     private void initialiseSurface(Context context) {
         playActivity = (PlayActivity) context ;
+        eventQueue = new PongEventQueue(new Handler(Looper.getMainLooper()), playActivity) ;
+        statsStore = MatchStatsStore.getInstance(context.getFilesDir()) ;
         setWillNotDraw(false);
         surfaceHolder = getHolder();
         surfaceHolder.addCallback(new SurfaceHolder.Callback() {
 
             @Override
             public void surfaceDestroyed(SurfaceHolder holder) {
+                Log.d(LOG_TAG, "surfaceDestroyed called.");
+                // The surface mustn't be drawn on once this returns, so wait for the current frame to finish
+                synchronized (lifecycleLock) {
+                    surfaceReady = false;
+                    waitForFrameEnd();
+                }
             }
 
             @Override
@@ -111,10 +182,21 @@ public class PongPitchSurfaceView extends SurfaceView implements Runnable {
             public void surfaceChanged(SurfaceHolder holder, int format,
                                        int width, int height) {
                 Log.d(LOG_TAG, "surfaceChanged called.");
-                setHeight(height);
-                setWidth(width);
-                initialisePitch();
-                //run();
+                synchronized (lifecycleLock) {
+                    waitForFrameEnd();
+                    // Only rebuild the pitch if its size has changed, so that the rally carries on when the surface is recreated (e.g. switching apps)
+                    if (pitch == null || width != PongPitchSurfaceView.this.width || height != PongPitchSurfaceView.this.height) {
+                        // Carry the current match over to the resized pitch
+                        if (pitch != null && pendingMatchState == null) {
+                            pendingMatchState = getMatchState();
+                        }
+                        setHeight(height);
+                        setWidth(width);
+                        initialisePitch();
+                    }
+                    surfaceReady = true;
+                    lifecycleLock.notifyAll();
+                }
             }
         });
     }
@@ -137,19 +219,66 @@ public class PongPitchSurfaceView extends SurfaceView implements Runnable {
         //run();
     }
 
+    /**
+     * Method to start (or restart) the game. The game thread is created the first time, and woken up after that.
+     */
     public void onResumePongPitchSurfaceView(){
-        running = true;
-        thread = new Thread(this);
-        thread.start();
+        synchronized (lifecycleLock) {
+            resumeNanos = System.nanoTime();
+            running = true;
+            if (thread == null) {
+                thread = new Thread(this, LOG_TAG);
+                thread.start();
+            }
+            lifecycleLock.notifyAll();
+        }
     }
 
+    /**
+     * Method to pause the game. Returns once the game thread has finished its current frame, so the match state can be safely saved.
+     * The thread itself is kept, waiting to be resumed.
+     */
     public void onPausePongPitchSurfaceView(){
-        boolean retry = true;
-        running = false;
-        while(retry){
+        synchronized (lifecycleLock) {
+            running = false;
+            waitForFrameEnd();
+        }
+        // Get any finished matches onto disk, in case the process is killed while in the background
+        statsStore.flush();
+    }
+
+    /**
+     * Method to end the game thread for good, e.g. when the activity is destroyed.
+     */
+    public void onDestroyPongPitchSurfaceView(){
+        synchronized (lifecycleLock) {
+            alive = false;
+            running = false;
+            lifecycleLock.notifyAll();
+        }
+        if (thread != null) {
+            // Abandons any level compile in progress, rather than waiting for it to finish
+            thread.interrupt();
+            boolean retry = true;
+            while(retry){
+                try {
+                    thread.join();
+                    retry = false;
+                } catch (InterruptedException e) {
+                    e.printStackTrace();
+                }
+            }
+            thread = null;
+        }
+    }
+
+    /**
+     * Method to wait until the game thread isn't in the middle of a frame. Must be called holding lifecycleLock.
+     */
+    private void waitForFrameEnd() {
+        while (inFrame) {
             try {
-                thread.join();
-                retry = false;
+                lifecycleLock.wait();
             } catch (InterruptedException e) {
                 e.printStackTrace();
             }
@@ -159,42 +288,139 @@ public class PongPitchSurfaceView extends SurfaceView implements Runnable {
     @Override
     public void run() {
         Log.d(LOG_TAG, "run() called.");
-        while(running){
-            if(surfaceHolder.getSurface().isValid()){
-                // Update ball's position
-                ball.update();
-
-                //Log.d(LOG_TAG,"Trying to draw to canvas") ;
-                // Get position of ball
-                float ballX = (float) ball.getPositionX();
-                float ballY = (float) ball.getPositionY();
-                // Check hasn't left pitch
-                if (ballY < 0 || ballY > height) {
-                    Log.e(LOG_TAG, "Error: ballY: " + ballY + " out of bounds.");
-                    running = false ;
+        while (true) {
+            long frameResumeNanos = 0 ;
+            int[][] levelPitch ;
+            synchronized (lifecycleLock) {
+                // Park until there is a game to play, and a surface to draw it on
+                while (alive && !(running && surfaceReady)) {
+                    try {
+                        lifecycleLock.wait();
+                    } catch (InterruptedException e) {
+                        e.printStackTrace();
+                    }
                 }
-                if (ballX < 0 ) {
-                    // Goal scored by right-hand side player
-                    running = false ;
-                    playActivity.showGoalScoredToast(getResources().getString(R.string.player_one));
+                if (!alive) {
+                    return;
                 }
-                if (ballX > width) {
-                    // Goal scored by left-hand side player
-                    running = false ;
-                    playActivity.showGoalScoredToast(getResources().getString(R.string.player_two));
+                levelPitch = uncompiledPitch;
+                if (levelPitch == null) {
+                    inFrame = true;
+                    frameResumeNanos = resumeNanos;
+                    resumeNanos = 0;
+                }
+            }
+            if (levelPitch != null) {
+                // Fit the level's obstacles to this pitch before its first frame. Done outside the lock (and not in a
+                // frame), so the UI thread isn't held up. If the pitch is rebuilt meanwhile, it's compiled again. If
+                // the thread is interrupted (i.e. destroyed), the compile is abandoned and the loop exits.
+                compileLevel(levelPitch);
+                synchronized (lifecycleLock) {
+                    if (uncompiledPitch == levelPitch) {
+                        uncompiledPitch = null;
+                    }
+                }
+                continue;
+            }
+            try {
+                updateAndDraw();
+            } finally {
+                synchronized (lifecycleLock) {
+                    inFrame = false;
+                    lifecycleLock.notifyAll();
                 }
+            }
+            if (frameResumeNanos != 0) {
+                Log.d(LOG_TAG, "Resume to first frame: " + (System.nanoTime() - frameResumeNanos) / 1000 + " us");
+            }
+        }
+    }
 
-                //Log.d(LOG_TAG,"ballX = " + ballX + ", ballY = " + ballY);
+    /**
+     * Method to advance the game by one timestep and draw it. Called on the game thread only.
+     */
+    private void updateAndDraw() {
+        if(surfaceHolder.getSurface().isValid()){
+            frameTimer.start();
+            // Update ball's position
+            boolean onAIPaddle = isAIPaddleAt(ball.getPositionX(), ball.getPositionY());
+            ball.update();
+            if (ball.hasReflected()) {
+                effects.addBounce(ball.getPositionX(), ball.getPositionY(), ball.getVelocityX(), ball.getVelocityY());
+                if (onAIPaddle) {
+                    matchRallies[RIGHT_PLAYER]++ ;
+                }
+            }
+            // Move the computer's paddle
+            if (aiPaddle != null) {
+                aiPaddle.update(ball.getPositionX(), ball.getPositionY(), ball.getVelocityX(), ball.getVelocityY());
+                stampAIPaddle();
+            }
 
-                // Draw on canvas
-                Canvas canvas = surfaceHolder.lockCanvas();
-                // Clear the view
-                canvas.drawColor(Color.BLACK);
-                // Draw the ball
-                canvas.drawCircle(ballX, ballY, ballRadius, paintBall);
-                // Post the canvas
-                surfaceHolder.unlockCanvasAndPost(canvas);
+            //Log.d(LOG_TAG,"Trying to draw to canvas") ;
+            // Get position of ball
+            float ballX = (float) ball.getPositionX();
+            float ballY = (float) ball.getPositionY();
+            // Check hasn't left pitch
+            if (ballY < 0 || ballY > height) {
+                Log.e(LOG_TAG, "Error: ballY: " + ballY + " out of bounds.");
+                synchronized (lifecycleLock) {
+                    running = false ;
+                }
+            }
+            if (ballX < 0 ) {
+                // Goal scored by right-hand side player. Re-serve from the centre spot, so the burst can be seen.
+                scores[RIGHT_PLAYER]++ ;
+                effects.addGoalBurst(0, ballY);
+                eventQueue.post(PongEventQueue.EVENT_GOAL_SCORED, RIGHT_PLAYER);
+                ball.initialise();
+                effects.clearTrail();
+                checkForMatchEnd();
             }
+            if (ballX > width) {
+                // Goal scored by left-hand side player. Re-serve from the centre spot, so the burst can be seen.
+                scores[LEFT_PLAYER]++ ;
+                effects.addGoalBurst(width, ballY);
+                eventQueue.post(PongEventQueue.EVENT_GOAL_SCORED, LEFT_PLAYER);
+                ball.initialise();
+                effects.clearTrail();
+                checkForMatchEnd();
+            }
+            // Advance the effects, and add the ball's (possibly re-served) position to its trail
+            ballX = (float) ball.getPositionX();
+            ballY = (float) ball.getPositionY();
+            effects.update();
+            effects.addTrailPoint(ballX, ballY);
+
+            //Log.d(LOG_TAG,"ballX = " + ballX + ", ballY = " + ballY);
+
+            // Draw on canvas
+            Canvas canvas = surfaceHolder.lockCanvas();
+            // Clear the view
+            canvas.drawColor(Color.BLACK);
+            // Draw the level's obstacles
+            level.draw(canvas, paintObstacle);
+            // Draw the effects underneath the ball
+            effects.draw(canvas);
+            // Draw the ball
+            canvas.drawCircle(ballX, ballY, ballRadius, paintBall);
+            // Draw the computer's paddle
+            if (aiPaddle != null) {
+                int paddleLeft = aiPaddle.getPaddleX() + ballRadius ;
+                int paddleTop = aiPaddle.getPositionY() - aiPaddle.getPaddleHeight() / 2 ;
+                canvas.drawRect(paddleLeft, paddleTop, paddleLeft + PADDLE_WIDTH, paddleTop + aiPaddle.getPaddleHeight(), paintPaddle);
+            }
+            // Draw the players' pitch history
+            if (pitchOverlayEnabled) {
+                pitchOverlayTimer.start();
+                pitchOverlay.draw(canvas, pitchOverlayLeft, pitchOverlayTop);
+                pitchOverlayTimer.stop();
+            }
+            // Post the canvas
+            surfaceHolder.unlockCanvasAndPost(canvas);
+            // Hand this frame's events to the UI thread
+            eventQueue.endFrame();
+            frameTimer.stop();
         }
     }
 
@@ -217,13 +443,264 @@ public class PongPitchSurfaceView extends SurfaceView implements Runnable {
             }
         }
 
+        // The level's obstacles are added by the game thread before the next frame
+        uncompiledPitch = pitch ;
+
         // Paint settings for the ball
         paintBall.setStyle(Paint.Style.FILL);
         paintBall.setColor(Color.RED);
+        // Paint settings for the paddle
+        paintPaddle.setStyle(Paint.Style.FILL);
+        paintPaddle.setColor(Color.WHITE);
+        // Paint settings for the level's obstacles
+        paintObstacle.setStyle(Paint.Style.FILL);
+        paintObstacle.setColor(Color.LTGRAY);
+        paintObstacle.setStrokeWidth(ballRadius / 2f);
         Log.d(LOG_TAG, "initialisePitch returning... pitch.length = " + pitch.length);
 
         // Initialise the ball's position
         ball.initialise();
+        effects.clear();
+
+        // Initialise the computer's paddle. The ball's centre is reflected when it is within ballRadius of the paddle's face.
+        int paddleFaceX = width - PADDLE_INSET - PADDLE_WIDTH ;
+        aiPaddle = new PongAIPaddle(paddleFaceX - ballRadius, height / 5, ballRadius + 1, height - 2 - ballRadius, new Random());
+        stampedPaddleTop = 0 ;
+        stampedPaddleBottom = -1 ;
+        stampAIPaddle();
+
+        // Pitch history overlay, in the middle of the top of the pitch. Drawn 1:1, so its cost doesn't depend on the screen size.
+        pitchOverlayLeft = (width - pitchOverlay.getWidth()) / 2 ;
+        pitchOverlayTop = ballRadius + PADDLE_INSET ;
+
+        // Carry on with a saved match, if there is one
+        if (pendingMatchState != null) {
+            applyMatchState(pendingMatchState);
+            pendingMatchState = null;
+        }
+    }
+
+    /**
+     * Method to add a pitch estimate for a player, e.g. from a PitchDetector. Can be called from the audio thread.
+     * @param player    Player index, e.g. PLAYER_ONE.
+     * @param frequency Pitch in Hz, or PitchDetector.NO_PITCH.
+     */
+    public void onPitchEstimate(int player, float frequency) {
+        pitchOverlay.addEstimate(player, frequency);
+        if (frequency > 0) {
+            synchronized (pitchRangeLock) {
+                if (matchMinPitch[player] == 0 || frequency < matchMinPitch[player]) {
+                    matchMinPitch[player] = frequency ;
+                }
+                if (frequency > matchMaxPitch[player]) {
+                    matchMaxPitch[player] = frequency ;
+                }
+            }
+        }
+    }
+
+    /**
+     * Method to check whether the ball's centre is in the AI paddle's area of the pitch array.
+     * @param x Ball's x position.
+     * @param y Ball's y position.
+     * @return  True if the ball is touching the AI paddle.
+     */
+    private boolean isAIPaddleAt(int x, int y) {
+        return pitch != null && x >= 0 && x < width && y >= 0 && y < height && pitch[x][y] == PADDLE_MIDDLE ;
+    }
+
+    /**
+     * Method to end the match if either player has reached WINNING_SCORE.
+     * The match is added to the stats store (which writes it on its own thread), and a new match started. Game thread only.
+     */
+    private void checkForMatchEnd() {
+        if (scores[PLAYER_ONE] < WINNING_SCORE && scores[PLAYER_TWO] < WINNING_SCORE) {
+            return ;
+        }
+        MatchStatsStore.MatchRecord match = new MatchStatsStore.MatchRecord(System.currentTimeMillis()) ;
+        synchronized (pitchRangeLock) {
+            for (int player = PLAYER_ONE ; player <= PLAYER_TWO ; player++) {
+                // Reaction latency isn't recorded: the singer has no paddle to react with yet, and the computer's
+                // reaction is just its reactionDelay, so there is nothing real to measure
+                match.setPlayer(player, matchRallies[player], scores[player], matchMinPitch[player], matchMaxPitch[player], 0, 0);
+                matchMinPitch[player] = 0 ;
+                matchMaxPitch[player] = 0 ;
+            }
+        }
+        statsStore.append(match);
+        for (int player = PLAYER_ONE ; player <= PLAYER_TWO ; player++) {
+            scores[player] = 0 ;
+            matchRallies[player] = 0 ;
+        }
+    }
+
+    /**
+     * Method to show or hide the pitch history overlay.
+     * @param enabled   True to draw the players' recent pitch over the pitch.
+     */
+    public void setPitchOverlayEnabled(boolean enabled) {
+        pitchOverlayEnabled = enabled ;
+    }
+
+    /**
+     * Method to save the state of the current match (ball, paddle, scores and the match's stats so far), e.g. into a Bundle when the activity is paused.
+     * Waits for the game thread to finish any frame in progress, so is best called after onPausePongPitchSurfaceView().
+     * @return  The match state, or null if no pitch has been built yet.
+     */
+    public int[] saveMatchState() {
+        synchronized (lifecycleLock) {
+            waitForFrameEnd();
+            if (pitch == null) {
+                return pendingMatchState ;
+            }
+            return getMatchState() ;
+        }
+    }
+
+    /**
+     * Method to restore a match saved by saveMatchState(). If the pitch hasn't been built yet, the state is applied when it is.
+     * A state saved on a pitch of a different size is scaled to fit.
+     * @param state The match state. Ignored if null or from an incompatible version.
+     */
+    public void restoreMatchState(int[] state) {
+        if (state == null || state.length != MATCH_STATE_LENGTH || state[0] != MATCH_STATE_VERSION) {
+            return ;
+        }
+        synchronized (lifecycleLock) {
+            waitForFrameEnd();
+            if (pitch == null) {
+                pendingMatchState = state ;
+            } else {
+                applyMatchState(state);
+            }
+        }
+    }
+
+    /**
+     * Method to pack the match state into a compact int array:
+     * {version, width, height, ballX, ballY, ballVelX, ballVelY, aiPaddleY, scorePlayerOne, scorePlayerTwo,
+     *  ralliesPlayerOne, ralliesPlayerTwo, minPitchPlayerOne, minPitchPlayerTwo, maxPitchPlayerOne, maxPitchPlayerTwo}
+     * Pitches are stored as their float bits.
+     * @return  The match state.
+     */
+    private int[] getMatchState() {
+        int[] state = {MATCH_STATE_VERSION, width, height,
+                ball.getPositionX(), ball.getPositionY(), ball.getVelocityX(), ball.getVelocityY(),
+                aiPaddle.getPositionY(), scores[PLAYER_ONE], scores[PLAYER_TWO],
+                matchRallies[PLAYER_ONE], matchRallies[PLAYER_TWO],
+                0, 0, 0, 0} ;
+        synchronized (pitchRangeLock) {
+            state[12] = Float.floatToIntBits(matchMinPitch[PLAYER_ONE]) ;
+            state[13] = Float.floatToIntBits(matchMinPitch[PLAYER_TWO]) ;
+            state[14] = Float.floatToIntBits(matchMaxPitch[PLAYER_ONE]) ;
+            state[15] = Float.floatToIntBits(matchMaxPitch[PLAYER_TWO]) ;
+        }
+        return state ;
+    }
+
+    /**
+     * Method to apply a match state (see getMatchState()) to the current pitch, scaling the positions if the pitch size has changed.
+     * @param state The match state.
+     */
+    private void applyMatchState(int[] state) {
+        double xScale = state[1] > 0 ? (double) width / state[1] : 1.0 ;
+        double yScale = state[2] > 0 ? (double) height / state[2] : 1.0 ;
+        // Keep the ball between the walls, and on the pitch
+        int ballX = Math.max(0, Math.min(width - 1, (int) (state[3] * xScale))) ;
+        int ballY = Math.max(ballRadius + 1, Math.min(height - 2 - ballRadius, (int) (state[4] * yScale))) ;
+        ball.setState(ballX, ballY, state[5], state[6]);
+        aiPaddle.setPositionY((int) (state[7] * yScale));
+        stampAIPaddle();
+        scores[PLAYER_ONE] = state[8] ;
+        scores[PLAYER_TWO] = state[9] ;
+        matchRallies[PLAYER_ONE] = state[10] ;
+        matchRallies[PLAYER_TWO] = state[11] ;
+        synchronized (pitchRangeLock) {
+            matchMinPitch[PLAYER_ONE] = Float.intBitsToFloat(state[12]) ;
+            matchMinPitch[PLAYER_TWO] = Float.intBitsToFloat(state[13]) ;
+            matchMaxPitch[PLAYER_ONE] = Float.intBitsToFloat(state[14]) ;
+            matchMaxPitch[PLAYER_TWO] = Float.intBitsToFloat(state[15]) ;
+        }
+    }
+
+    /**
+     * Method to load the level (the first time only) and compile its obstacles for a pitch array. Game thread only.
+     * @param levelPitch    Pitch array the obstacles are to fit.
+     */
+    private void compileLevel(int[][] levelPitch) {
+        if (level == null) {
+            level = loadLevel(R.raw.level_default) ;
+        }
+        long compileStart = System.nanoTime() ;
+        if (!level.compile(levelPitch.length, levelPitch[0].length, ballRadius)) {
+            Log.d(LOG_TAG, "Level compile interrupted.");
+            return;
+        }
+        Log.d(LOG_TAG, "Compiled " + level.getShapeCount() + " level shapes in " + (System.nanoTime() - compileStart) / 1000 + " us");
+    }
+
+    /**
+     * Method to load a level from a raw resource. If the level can't be loaded, an empty level is used.
+     * @param resourceId    Raw resource ID of the level file.
+     * @return  The loaded level.
+     */
+    private PongLevel loadLevel(int resourceId) {
+        InputStreamReader reader = null ;
+        try {
+            reader = new InputStreamReader(getResources().openRawResource(resourceId), "UTF-8") ;
+            return PongLevel.load(reader) ;
+        } catch (IOException e) {
+            Log.e(LOG_TAG, "Couldn't load level, so using an empty pitch: " + e.getMessage());
+            e.printStackTrace();
+            return new PongLevel() ;
+        } finally {
+            if (reader != null) {
+                try {
+                    reader.close();
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
+        }
+    }
+
+    /**
+     * Method to mark the AI paddle's current position in the pitch array, so that the ball is reflected by it.
+     * Only the rows that have changed since the last call are updated, so the cost is proportional to the distance the paddle has moved.
+     */
+    private void stampAIPaddle() {
+        // Rows in which the ball's centre touches the paddle
+        int reach = aiPaddle.getPaddleHeight() / 2 + ballRadius ;
+        int top = Math.max(0, aiPaddle.getPositionY() - reach) ;
+        int bottom = Math.min(height - 1, aiPaddle.getPositionY() + reach) ;
+        // Clear rows the paddle has left, then fill rows it has moved into
+        for (int j = stampedPaddleTop ; j <= stampedPaddleBottom ; j++) {
+            if (j < top || j > bottom) {
+                setAIPaddleRow(j, PITCH_SURFACE);
+            }
+        }
+        for (int j = top ; j <= bottom ; j++) {
+            if (j < stampedPaddleTop || j > stampedPaddleBottom) {
+                setAIPaddleRow(j, PADDLE_MIDDLE);
+            }
+        }
+        stampedPaddleTop = top ;
+        stampedPaddleBottom = bottom ;
+    }
+
+    /**
+     * Method to set a single row of the AI paddle's area of the pitch array. Walls are never overwritten.
+     * @param row   Row of the pitch array to set.
+     * @param code  PADDLE_MIDDLE to mark the paddle, or PITCH_SURFACE to clear it.
+     */
+    private void setAIPaddleRow(int row, int code) {
+        int left = Math.max(0, aiPaddle.getPaddleX()) ;
+        int right = Math.min(width - 1, aiPaddle.getPaddleX() + ballRadius) ;
+        for (int i = left ; i <= right ; i++) {
+            if (pitch[i][row] == PITCH_SURFACE || pitch[i][row] == PADDLE_MIDDLE) {
+                pitch[i][row] = code ;
+            }
+        }
     }
     /**
      * Method to return the centre of the pitch.
@@ -240,17 +717,26 @@ public class PongPitchSurfaceView extends SurfaceView implements Runnable {
     /**
      * Method to return the unit vector normal to be used in calculating the PongBall's velocity in the next timestep.
      * In the case of the ball being on the pitch surface, return 0 to prevent any reflection.
+     * Obstacles only reflect a ball heading into them (v . n < 0). Otherwise a ball whose velocity was truncated
+     * on reflection could be reflected back in on the next timestep, and rattle along the obstacle's surface.
      * @param xPosition Ball's xPosition.
      * @param yPosition Ball's yPosition.
+     * @param xVelocity Ball's xVelocity.
+     * @param yVelocity Ball's yVelocity.
      * @return  The unit vector normal to any reflection surface, or 0 if the ball is on the pitch surface.
      */
-    public double[] getReflectionNormal(int xPosition, int yPosition) {
+    public double[] getReflectionNormal(int xPosition, int yPosition, int xVelocity, int yVelocity) {
         try {
             // Determine where the ball is on the pitch, and return the normal if it needs to be reflected.
-            Log.d(LOG_TAG, "getReflectionNormal called. pitch.length = " + pitch.length);
             switch (pitch[xPosition][yPosition]) {
                 case PITCH_SURFACE:
-                    return NORMAL_PITCH_SURFACE;
+                    // Obstacles from the level are found in its spatial index
+                    double[] normal = level == null ? null : level.getReflectionNormal(xPosition, yPosition);
+                    if (normal == null || xVelocity * normal[0] + yVelocity * normal[1] >= 0) {
+                        // Free space, or already heading out of the obstacle
+                        return NORMAL_PITCH_SURFACE;
+                    }
+                    return normal;
                 case PITCH_LOWER_WALL:
                     return NORMAL_PITCH_LOWER_WALL;    // No actual need to differentiate top/bottom for normals, since n or -n can be used for reflection.
                 case PITCH_TOP_WALL:
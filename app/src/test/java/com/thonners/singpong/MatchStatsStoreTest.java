@@ -0,0 +1,323 @@
+package com.thonners.singpong;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for MatchStatsStore: exact totals across compaction and reopening, and recovery from a torn
+ * tail, a missing or corrupt index, a stale index, corrupt records in the middle or at the end of the
+ * log, and a corrupt log header.
+ *
+ * Each test uses its own store on a fresh directory. Stores are opened with the package-private
+ * constructor, so the shared instance isn't used.
+ *
+ * @author Thonners
+ * @since 18/10/26
+ * @version 1.0
+ */
+public class MatchStatsStoreTest {
+
+    private static final int P1 = PongPitchSurfaceView.PLAYER_ONE ;
+    private static final int P2 = PongPitchSurfaceView.PLAYER_TWO ;
+
+    private File directory ;
+    private File logFile ;
+    private File indexFile ;
+
+    @Before
+    public void createDirectory() throws IOException {
+        directory = File.createTempFile("match_stats", "") ;
+        assertTrue(directory.delete());
+        assertTrue(directory.mkdir());
+        logFile = new File(directory, "match_stats.log") ;
+        indexFile = new File(directory, "match_stats.idx") ;
+    }
+
+    @After
+    public void deleteDirectory() {
+        File[] files = directory.listFiles() ;
+        if (files != null) {
+            for (File file : files) {
+                file.delete() ;
+            }
+        }
+        directory.delete() ;
+    }
+
+    /**
+     * Method to create the ith synthetic match. Every field varies, so the totals can be checked exactly.
+     */
+    private static MatchStatsStore.MatchRecord createMatch(int i) {
+        MatchStatsStore.MatchRecord match = new MatchStatsStore.MatchRecord(1000000L + i) ;
+        match.setPlayer(P1, i % 7, i % 3, 100f + i % 50, 200f + i % 300, 0, 0);
+        match.setPlayer(P2, i % 5, 5, 0f, 0f, 150 + i % 11, 1);
+        return match ;
+    }
+
+    /**
+     * Method to check the stats are exactly the totals of matches [0, count).
+     */
+    private static void assertTotals(int count, MatchStatsStore.Stats stats) {
+        assertTotals(count, -1, stats);
+    }
+
+    /**
+     * Method to check the stats are exactly the totals of matches [0, count), except the missing one.
+     */
+    private static void assertTotals(int count, int missing, MatchStatsStore.Stats stats) {
+        assertNotNull(stats);
+        long rallies1 = 0, goals1 = 0, rallies2 = 0, latency2 = 0 ;
+        float minPitch = 0, maxPitch = 0 ;
+        int matches = 0 ;
+        for (int i = 0 ; i < count ; i++) {
+            if (i == missing) {
+                continue ;
+            }
+            matches++ ;
+            rallies1 += i % 7 ;
+            goals1 += i % 3 ;
+            rallies2 += i % 5 ;
+            latency2 += 150 + i % 11 ;
+            minPitch = minPitch == 0 ? 100f + i % 50 : Math.min(minPitch, 100f + i % 50) ;
+            maxPitch = Math.max(maxPitch, 200f + i % 300) ;
+        }
+        assertEquals("Matches", matches, stats.getMatches());
+        assertEquals("Player one rallies", rallies1, stats.getRallies(P1));
+        assertEquals("Player one goals", goals1, stats.getGoals(P1));
+        assertEquals("Player two rallies", rallies2, stats.getRallies(P2));
+        assertEquals("Player two goals", 5L * matches, stats.getGoals(P2));
+        assertEquals(minPitch, stats.getMinPitch(P1), 0f);
+        assertEquals(maxPitch, stats.getMaxPitch(P1), 0f);
+        assertEquals(0f, stats.getMaxPitch(P2), 0f);
+        assertEquals(-1.0, stats.getAverageReactionLatency(P1), 0.0);
+        if (matches > 0) {
+            assertEquals((double) latency2 / matches, stats.getAverageReactionLatency(P2), 1e-9);
+        }
+    }
+
+    /**
+     * Method to flush a store, and wait for it to finish everything queued so far.
+     * @return  The store's stats once it has finished.
+     */
+    private static MatchStatsStore.Stats sync(MatchStatsStore store) throws InterruptedException {
+        store.flush();
+        final CountDownLatch done = new CountDownLatch(1) ;
+        final AtomicReference<MatchStatsStore.Stats> result = new AtomicReference<MatchStatsStore.Stats>() ;
+        store.readStats(new MatchStatsStore.StatsListener() {
+            @Override
+            public void onStats(MatchStatsStore.Stats stats) {
+                result.set(stats);
+                done.countDown();
+            }
+        });
+        assertTrue("Timed out waiting for the store", done.await(30, TimeUnit.SECONDS));
+        return result.get() ;
+    }
+
+    /**
+     * Method to open a store on the test directory, add matches [from, to) and wait for them to be written.
+     */
+    private MatchStatsStore appendMatches(int from, int to) throws InterruptedException {
+        MatchStatsStore store = new MatchStatsStore(directory) ;
+        for (int i = from ; i < to ; i++) {
+            store.append(createMatch(i));
+        }
+        sync(store) ;
+        return store ;
+    }
+
+    private MatchStatsStore.Stats reopen() throws InterruptedException {
+        return sync(new MatchStatsStore(directory)) ;
+    }
+
+    private static long logSizeFor(int records) {
+        return MatchStatsStore.HEADER_SIZE + (long) records * MatchStatsStore.RECORD_SIZE ;
+    }
+
+    /**
+     * Method to overwrite one byte of a file with its complement.
+     */
+    private static void corruptByte(File file, long position) throws IOException {
+        RandomAccessFile output = new RandomAccessFile(file, "rw") ;
+        try {
+            output.seek(position);
+            int value = output.read() ;
+            output.seek(position);
+            output.write(~value);
+        } finally {
+            output.close();
+        }
+    }
+
+    @Test
+    public void emptyStoreHasNoMatches() throws InterruptedException {
+        assertTotals(0, reopen());
+        assertEquals(logSizeFor(0), logFile.length());
+        assertEquals(MatchStatsStore.INDEX_SIZE, indexFile.length());
+    }
+
+    @Test
+    public void totalsAreExactAcrossCompaction() throws InterruptedException {
+        int count = 2 * MatchStatsStore.COMPACT_THRESHOLD + 100 ;
+        MatchStatsStore store = appendMatches(0, count) ;
+        assertTotals(count, store.getStats());
+        // Compacted at least twice, so the log only holds the most recent matches
+        long records = (logFile.length() - MatchStatsStore.HEADER_SIZE) / MatchStatsStore.RECORD_SIZE ;
+        assertTrue("Records in log: " + records, records >= MatchStatsStore.COMPACT_KEEP && records < MatchStatsStore.COMPACT_THRESHOLD);
+        assertTotals(count, reopen());
+    }
+
+    @Test
+    public void largeHistoryReopensFromTheIndex() throws InterruptedException {
+        int count = 20000 ;
+        appendMatches(0, count) ;
+        long start = System.nanoTime() ;
+        MatchStatsStore.Stats stats = reopen() ;
+        long reopenMicros = (System.nanoTime() - start) / 1000 ;
+        assertTotals(count, stats);
+        System.out.println("MatchStatsStore: reopened " + count + " matches in " + reopenMicros + " us");
+    }
+
+    @Test
+    public void tornTailIsTruncated() throws IOException, InterruptedException {
+        appendMatches(0, 100) ;
+        // Half a record, as if the process died part way through a write
+        RandomAccessFile output = new RandomAccessFile(logFile, "rw") ;
+        try {
+            output.seek(output.length());
+            output.write(new byte[MatchStatsStore.RECORD_SIZE / 2]);
+        } finally {
+            output.close();
+        }
+        assertTotals(100, reopen());
+        assertEquals(logSizeFor(100), logFile.length());
+    }
+
+    @Test
+    public void deletedIndexIsRebuiltFromTheLog() throws InterruptedException {
+        // Enough matches to compact, so the rebuilt totals include the log header's baseline
+        int count = MatchStatsStore.COMPACT_THRESHOLD + 500 ;
+        appendMatches(0, count) ;
+        assertTrue(indexFile.delete());
+        assertTotals(count, reopen());
+        assertTrue(indexFile.exists());
+        assertTotals(count, reopen());
+    }
+
+    @Test
+    public void corruptIndexIsRebuiltFromTheLog() throws IOException, InterruptedException {
+        int count = MatchStatsStore.COMPACT_THRESHOLD + 500 ;
+        appendMatches(0, count) ;
+        corruptByte(indexFile, 40);
+        assertTotals(count, reopen());
+        assertTotals(count, reopen());
+    }
+
+    @Test
+    public void staleIndexReplaysTheRecordsAfterIt() throws IOException, InterruptedException {
+        appendMatches(0, 300) ;
+        byte[] staleIndex = readAll(indexFile) ;
+        appendMatches(300, 500) ;
+        // Put back the index from before the last 200 matches, as if the process died before writing the new one
+        RandomAccessFile output = new RandomAccessFile(indexFile, "rw") ;
+        try {
+            output.write(staleIndex);
+        } finally {
+            output.close();
+        }
+        assertTotals(500, reopen());
+    }
+
+    @Test
+    public void corruptRecordIsSkipped() throws IOException, InterruptedException {
+        appendMatches(0, 500) ;
+        // Damage match 200, and lose the index so the log is replayed
+        corruptByte(logFile, logSizeFor(200) + 10);
+        assertTrue(indexFile.delete());
+        assertTotals(500, 200, reopen());
+        // The records after it are kept
+        assertEquals(logSizeFor(500), logFile.length());
+        MatchStatsStore store = appendMatches(500, 600) ;
+        assertTotals(600, 200, store.getStats());
+        assertTrue(indexFile.delete());
+        assertTotals(600, 200, reopen());
+    }
+
+    @Test
+    public void corruptRecordsAtTheEndAreTruncated() throws IOException, InterruptedException {
+        appendMatches(0, 300) ;
+        // Damage the last three matches, and lose the index so the log is replayed
+        for (int i = 297 ; i < 300 ; i++) {
+            corruptByte(logFile, logSizeFor(i) + 10);
+        }
+        assertTrue(indexFile.delete());
+        assertTotals(297, reopen());
+        assertEquals(logSizeFor(297), logFile.length());
+        // New matches carry on from the last good record
+        MatchStatsStore store = appendMatches(297, 400) ;
+        assertTotals(400, store.getStats());
+        assertTotals(400, reopen());
+    }
+
+    @Test
+    public void corruptLogHeaderRecoversTheTotalsFromTheIndex() throws IOException, InterruptedException {
+        // Enough matches to compact, so the totals include the log header's baseline
+        int count = MatchStatsStore.COMPACT_THRESHOLD + 500 ;
+        appendMatches(0, count) ;
+        corruptByte(logFile, 20);
+        assertTotals(count, reopen());
+        // The new log carries on from the recovered totals, without the index
+        MatchStatsStore store = appendMatches(count, count + 100) ;
+        assertTotals(count + 100, store.getStats());
+        assertTrue(indexFile.delete());
+        assertTotals(count + 100, reopen());
+    }
+
+    @Test
+    public void corruptLogHeaderReplaysTheRecordsAfterTheIndex() throws IOException, InterruptedException {
+        appendMatches(0, 300) ;
+        byte[] staleIndex = readAll(indexFile) ;
+        appendMatches(300, 500) ;
+        RandomAccessFile output = new RandomAccessFile(indexFile, "rw") ;
+        try {
+            output.write(staleIndex);
+        } finally {
+            output.close();
+        }
+        corruptByte(logFile, 20);
+        assertTotals(500, reopen());
+        assertTotals(500, reopen());
+    }
+
+    @Test
+    public void corruptLogHeaderAndIndexStartsAgain() throws IOException, InterruptedException {
+        appendMatches(0, 100) ;
+        corruptByte(logFile, 20);
+        corruptByte(indexFile, 40);
+        assertTotals(0, reopen());
+        assertEquals(logSizeFor(0), logFile.length());
+    }
+
+    private static byte[] readAll(File file) throws IOException {
+        RandomAccessFile input = new RandomAccessFile(file, "r") ;
+        try {
+            byte[] contents = new byte[(int) input.length()] ;
+            input.readFully(contents);
+            return contents ;
+        } finally {
+            input.close();
+        }
+    }
+}
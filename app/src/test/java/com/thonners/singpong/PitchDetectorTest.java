@@ -0,0 +1,170 @@
+package com.thonners.singpong;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for PitchDetector: the incrementally updated difference function against a full recompute,
+ * the estimates themselves, and the throughput at different hop sizes.
+ *
+ * @author Thonners
+ * @since 18/10/26
+ * @version 1.0
+ */
+public class PitchDetectorTest {
+
+    private static final int SAMPLE_RATE = 44100 ;
+    private static final int WINDOW_SIZE = 1024 ;
+    private static final float MIN_FREQUENCY = 60f ;
+    private static final float MAX_FREQUENCY = 1000f ;
+    private static final int MAX_LAG = (int) Math.ceil(SAMPLE_RATE / MIN_FREQUENCY) ;
+    private static final int SPAN = WINDOW_SIZE + MAX_LAG ;
+
+    /**
+     * Listener which keeps the last estimate.
+     */
+    private static class LastEstimate implements PitchDetector.OnPitchListener {
+        float frequency = PitchDetector.NO_PITCH ;
+        int count = 0 ;
+
+        @Override
+        public void onPitchEstimated(float frequency) {
+            this.frequency = frequency ;
+            count++ ;
+        }
+    }
+
+    /**
+     * Method to create a voice-like test signal: a tone with two harmonics, plus some noise.
+     */
+    private static float[] createSignal(float frequency, int length, long seed) {
+        Random random = new Random(seed) ;
+        float[] signal = new float[length] ;
+        for (int i = 0 ; i < length ; i++) {
+            double phase = 2.0 * Math.PI * frequency * i / SAMPLE_RATE ;
+            signal[i] = (float) (0.5 * Math.sin(phase) + 0.2 * Math.sin(2 * phase) + 0.1 * Math.sin(3 * phase) + 0.02 * random.nextGaussian()) ;
+        }
+        return signal ;
+    }
+
+    /**
+     * Method to check that the current (incrementally updated) difference function matches a full recompute.
+     * The tolerance is relative to the largest value of d, as values near a dip can be close to zero.
+     */
+    private static void assertMatchesRecompute(PitchDetector detector) {
+        double[] incremental = new double[MAX_LAG + 1] ;
+        for (int tau = 1 ; tau <= MAX_LAG ; tau++) {
+            incremental[tau] = detector.getDifference(tau) ;
+        }
+        detector.recomputeDifference();
+        double largest = 0 ;
+        for (int tau = 1 ; tau <= MAX_LAG ; tau++) {
+            largest = Math.max(largest, detector.getDifference(tau)) ;
+        }
+        assertTrue(largest > 0);
+        for (int tau = 1 ; tau <= MAX_LAG ; tau++) {
+            assertEquals("d(" + tau + ")", detector.getDifference(tau), incremental[tau], 1e-6 * largest);
+        }
+    }
+
+    @Test
+    public void incrementalDifferenceMatchesRecompute() {
+        float[] signal = createSignal(220f, 40 * SPAN, 28) ;
+        // Check after one hop, part way through the resync interval, and just before the resync (where the error is largest)
+        int[] checkpoints = {SPAN + 1, 5 * SPAN + 123, 32 * SPAN + SPAN - 2} ;
+        for (int checkpoint : checkpoints) {
+            PitchDetector detector = new PitchDetector(SAMPLE_RATE, WINDOW_SIZE, MIN_FREQUENCY, MAX_FREQUENCY, 256, null) ;
+            for (int i = 0 ; i < checkpoint ; i++) {
+                detector.addSample(signal[i]);
+            }
+            assertMatchesRecompute(detector);
+        }
+    }
+
+    @Test
+    public void incrementalDifferenceMatchesRecomputeWhenThePitchChanges() {
+        float[] low = createSignal(110f, 3 * SPAN, 1) ;
+        float[] high = createSignal(440f, 3 * SPAN, 2) ;
+        PitchDetector detector = new PitchDetector(SAMPLE_RATE, WINDOW_SIZE, MIN_FREQUENCY, MAX_FREQUENCY, 256, null) ;
+        for (float sample : low) {
+            detector.addSample(sample);
+        }
+        for (int i = 0 ; i < SPAN / 2 ; i++) {
+            detector.addSample(high[i]);
+        }
+        assertMatchesRecompute(detector);
+    }
+
+    @Test
+    public void estimatesTonePitch() {
+        float[] frequencies = {82.4f, 220f, 440f, 880f} ;
+        for (float frequency : frequencies) {
+            LastEstimate estimate = new LastEstimate() ;
+            PitchDetector detector = new PitchDetector(SAMPLE_RATE, WINDOW_SIZE, MIN_FREQUENCY, MAX_FREQUENCY, 512, estimate) ;
+            for (float sample : createSignal(frequency, 4 * SPAN, 3)) {
+                detector.addSample(sample);
+            }
+            assertEquals("Estimate for " + frequency + " Hz", frequency, estimate.frequency, frequency * 0.01f);
+        }
+    }
+
+    @Test
+    public void reportsNoPitchForSilenceAndShortInput() {
+        LastEstimate estimate = new LastEstimate() ;
+        PitchDetector detector = new PitchDetector(SAMPLE_RATE, WINDOW_SIZE, MIN_FREQUENCY, MAX_FREQUENCY, 1, estimate) ;
+        for (int i = 0 ; i < SPAN - 1 ; i++) {
+            detector.addSample(0f);
+        }
+        assertEquals(0, estimate.count);
+        assertEquals(PitchDetector.NO_PITCH, detector.estimatePitch(), 0f);
+        for (int i = 0 ; i < SPAN ; i++) {
+            detector.addSample(0f);
+        }
+        assertEquals(PitchDetector.NO_PITCH, estimate.frequency, 0f);
+    }
+
+    @Test
+    public void estimatesOncePerHop() {
+        LastEstimate estimate = new LastEstimate() ;
+        PitchDetector detector = new PitchDetector(SAMPLE_RATE, WINDOW_SIZE, MIN_FREQUENCY, MAX_FREQUENCY, 100, estimate) ;
+        short[] buffer = new short[SPAN + 1000] ;
+        detector.addSamples(buffer, 0, buffer.length);
+        // The first estimate is after the hop following the first whole window
+        assertEquals(1001 / 100, estimate.count);
+    }
+
+    /**
+     * Benchmark of the samples processed per second at different hop sizes, on one second of audio
+     * repeated. Smaller hops estimate more often; the cost of updating d is the same for every hop size.
+     * Rates are printed rather than asserted, as they depend on the machine.
+     */
+    @Test
+    public void benchmarkHopSize() {
+        float[] signal = createSignal(220f, SAMPLE_RATE, 4) ;
+        short[] buffer = new short[signal.length] ;
+        for (int i = 0 ; i < signal.length ; i++) {
+            buffer[i] = (short) (signal[i] * 32767) ;
+        }
+        int[] hopSizes = {1, 64, 256, 1024} ;
+        for (int hopSize : hopSizes) {
+            LastEstimate estimate = new LastEstimate() ;
+            PitchDetector detector = new PitchDetector(SAMPLE_RATE, WINDOW_SIZE, MIN_FREQUENCY, MAX_FREQUENCY, hopSize, estimate) ;
+            // Warm up, then time the best of a few seconds of audio
+            detector.addSamples(buffer, 0, buffer.length);
+            long best = Long.MAX_VALUE ;
+            for (int run = 0 ; run < 3 ; run++) {
+                long start = System.nanoTime() ;
+                detector.addSamples(buffer, 0, buffer.length);
+                best = Math.min(best, System.nanoTime() - start) ;
+            }
+            double samplesPerSecond = buffer.length * 1e9 / best ;
+            System.out.println("PitchDetector: hop " + hopSize + ": " + Math.round(samplesPerSecond / 1000) + "k samples/s ("
+                    + Math.round(samplesPerSecond / SAMPLE_RATE) + "x real time)");
+            assertTrue(estimate.count > 0);
+        }
+    }
+}
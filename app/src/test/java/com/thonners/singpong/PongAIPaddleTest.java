@@ -0,0 +1,339 @@
+package com.thonners.singpong;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for PongAIPaddle.
+ *
+ * The intercept prediction folds the ball's straight line trajectory over the walls. It is checked
+ * against an ideal (mirror) reflection, and against a ball stepped with the game's own wall physics,
+ * where the velocity is flipped wherever the ball's centre enters the ballRadius wide wall band.
+ * update() is driven against the same stepped ball, and a small self-play harness plays the
+ * difficulty presets against each other.
+ *
+ * @author Thonners
+ * @since 18/10/26
+ * @version 1.0
+ */
+public class PongAIPaddleTest {
+
+    private static final int WALL_MIN = 11 ;
+    private static final int WALL_MAX = 1068 ;
+
+    // Geometry of the game's pitch (see PongPitchSurfaceView.initialisePitch) on a 1920x1080 screen
+    private static final int WIDTH = 1920 ;
+    private static final int HEIGHT = 1080 ;
+    private static final int BALL_RADIUS = 50 ;
+    private static final int PITCH_WALL_MIN = BALL_RADIUS + 1 ;
+    private static final int PITCH_WALL_MAX = HEIGHT - 2 - BALL_RADIUS ;
+    private static final int PADDLE_HEIGHT = HEIGHT / 5 ;
+    private static final int PADDLE_REACH = PADDLE_HEIGHT / 2 + BALL_RADIUS ;  // Furthest the ball's centre can be from the paddle's and still hit it
+    private static final int LEFT_PADDLE_X = 40 + 20 + BALL_RADIUS ;
+    private static final int RIGHT_PADDLE_X = WIDTH - 40 - 20 - BALL_RADIUS ;
+    private static final int WINNING_SCORE = 5 ;
+
+    /**
+     * Ball stepped with the game's wall physics: the velocity is worked out from the current position
+     * (flipping vy anywhere in a wall band), then the ball is moved. Its position is never mirrored.
+     */
+    private static class SteppedBall {
+        int x ;
+        int y ;
+        int velX ;
+        int velY ;
+        int bounces = 0 ;
+
+        SteppedBall(int x, int y, int velX, int velY) {
+            this.x = x ;
+            this.y = y ;
+            this.velX = velX ;
+            this.velY = velY ;
+        }
+
+        void step() {
+            if (y <= BALL_RADIUS || y >= HEIGHT - 1 - BALL_RADIUS) {
+                velY = -velY ;
+                bounces++ ;
+            }
+            x += velX ;
+            y += velY ;
+        }
+
+        /**
+         * Method to step the ball until its centre reaches targetX.
+         * @return  Number of steps taken.
+         */
+        int stepTo(int targetX) {
+            int steps = 0 ;
+            while (velX > 0 ? x < targetX : x > targetX) {
+                step();
+                steps++ ;
+            }
+            return steps ;
+        }
+    }
+
+    /**
+     * Method to step the ball forward until it reaches targetX, reflecting it off the walls as it goes.
+     * @return  The y coordinate of the ball when it reaches targetX.
+     */
+    private static double simulateInterceptY(int ballX, int ballY, int velX, int velY, int targetX, int wallMin, int wallMax) {
+        double y = ballY ;
+        double vy = velY ;
+        int steps = (targetX - ballX) / velX ;
+        for (int step = 0 ; step < steps ; step++) {
+            y += vy ;
+            // Reflect about whichever wall was crossed. Repeat in case the step was longer than the pitch is high.
+            while (y < wallMin || y > wallMax) {
+                if (y < wallMin) {
+                    y = 2 * wallMin - y ;
+                } else {
+                    y = 2 * wallMax - y ;
+                }
+                vy = -vy ;
+            }
+        }
+        return y ;
+    }
+
+    private static void assertPrediction(int ballX, int ballY, int velX, int velY, int targetX, int wallMin, int wallMax) {
+        double expected = simulateInterceptY(ballX, ballY, velX, velY, targetX, wallMin, wallMax) ;
+        int predicted = PongAIPaddle.predictInterceptY(ballX, ballY, velX, velY, targetX, wallMin, wallMax) ;
+        assertEquals("Ball at (" + ballX + ", " + ballY + ") moving (" + velX + ", " + velY + ")", expected, predicted, 0.5);
+    }
+
+    @Test
+    public void predictsStraightLineWithNoBounce() {
+        assertPrediction(960, 540, 5, 1, 1860, WALL_MIN, WALL_MAX);
+        assertPrediction(960, 540, 5, 0, 1860, WALL_MIN, WALL_MAX);
+    }
+
+    @Test
+    public void predictsSingleBounce() {
+        assertPrediction(960, 540, 5, 4, 1860, WALL_MIN, WALL_MAX);
+        assertPrediction(960, 540, 5, -4, 1860, WALL_MIN, WALL_MAX);
+    }
+
+    @Test
+    public void predictsMultipleBounces() {
+        // Steep trajectories that cross the pitch several times before reaching the paddle
+        assertPrediction(100, 300, 2, 17, 1860, WALL_MIN, WALL_MAX);
+        assertPrediction(100, 300, 2, -29, 1860, WALL_MIN, WALL_MAX);
+        assertPrediction(1860, 700, 1, 53, 1900, WALL_MIN, WALL_MAX);
+    }
+
+    @Test
+    public void predictsNegativeVelocityX() {
+        // Ball heading for a paddle on the left-hand side
+        assertPrediction(1800, 540, -5, 7, 60, WALL_MIN, WALL_MAX);
+        assertPrediction(1800, 200, -3, -19, 60, WALL_MIN, WALL_MAX);
+    }
+
+    @Test
+    public void matchesSimulationForRandomTrajectories() {
+        Random random = new Random(26) ;
+        for (int i = 0 ; i < 2000 ; i++) {
+            int velX = (random.nextBoolean() ? 1 : -1) * (1 + random.nextInt(8)) ;
+            int velY = random.nextInt(81) - 40 ;
+            int ballY = WALL_MIN + random.nextInt(WALL_MAX - WALL_MIN + 1) ;
+            int ballX = 960 ;
+            // Choose a target a whole number of timesteps away, so the stepped ball lands exactly on it
+            int targetX = ballX + velX * random.nextInt(400) ;
+            assertPrediction(ballX, ballY, velX, velY, targetX, WALL_MIN, WALL_MAX);
+        }
+    }
+
+    @Test
+    public void returnsWallMinWhenThereIsNoSpan() {
+        assertEquals(500, PongAIPaddle.predictInterceptY(960, 500, 5, 3, 1860, 500, 500));
+        assertEquals(500, PongAIPaddle.predictInterceptY(960, 500, 5, 3, 1860, 500, 400));
+    }
+
+    @Test
+    public void predictionMatchesTheGamesWallPhysics() {
+        // The game reflects the ball wherever it enters the wall band rather than mirroring it about the band's
+        // edge, so the ball drifts up to 2|velY| from the fold with each bounce, plus up to |velY| from comparing
+        // between ticks. It must still be within the paddle's reach.
+        Random random = new Random(126) ;
+        int worstError = 0 ;
+        for (int i = 0 ; i < 2000 ; i++) {
+            int velX = 2 + random.nextInt(7) ;
+            int velY = random.nextInt(25) - 12 ;
+            SteppedBall ball = new SteppedBall(WIDTH / 2, PITCH_WALL_MIN + random.nextInt(PITCH_WALL_MAX - PITCH_WALL_MIN + 1), velX, velY) ;
+            int predicted = PongAIPaddle.predictInterceptY(ball.x, ball.y, velX, velY, RIGHT_PADDLE_X, PITCH_WALL_MIN, PITCH_WALL_MAX) ;
+            ball.stepTo(RIGHT_PADDLE_X);
+            // Compare at the same time, not where the ball has overshot the paddle
+            int overshoot = ball.x - RIGHT_PADDLE_X ;
+            double arrivalY = ball.y - (double) ball.velY * overshoot / velX ;
+            double error = Math.abs(arrivalY - predicted) ;
+            assertTrue("Error " + error + " after " + ball.bounces + " bounces at velY " + velY, error <= Math.abs(velY) * (2 * ball.bounces + 1) + 1);
+            worstError = Math.max(worstError, (int) Math.ceil(error)) ;
+        }
+        assertTrue("Worst prediction error " + worstError, worstError < PADDLE_REACH);
+    }
+
+    @Test
+    public void perfectPaddleReachesTheSteppedBall() {
+        Random random = new Random(226) ;
+        for (int i = 0 ; i < 500 ; i++) {
+            PongAIPaddle paddle = new PongAIPaddle(RIGHT_PADDLE_X, PADDLE_HEIGHT, PITCH_WALL_MIN, PITCH_WALL_MAX, random) ;
+            paddle.setDifficulty(1, 0, 20);
+            SteppedBall ball = new SteppedBall(WIDTH / 2, PITCH_WALL_MIN + random.nextInt(PITCH_WALL_MAX - PITCH_WALL_MIN + 1),
+                    3 + random.nextInt(6), random.nextInt(25) - 12) ;
+            while (ball.x < RIGHT_PADDLE_X) {
+                ball.step();
+                paddle.update(ball.x, ball.y, ball.velX, ball.velY);
+            }
+            assertTrue("Ball at " + ball.y + ", paddle at " + paddle.getPositionY(), Math.abs(ball.y - paddle.getPositionY()) <= PADDLE_REACH);
+        }
+    }
+
+    @Test
+    public void paddleMovesNoFasterThanMaxSpeed() {
+        Random random = new Random(326) ;
+        PongAIPaddle paddle = new PongAIPaddle(RIGHT_PADDLE_X, PADDLE_HEIGHT, PITCH_WALL_MIN, PITCH_WALL_MAX, random) ;
+        paddle.setDifficulty(3, 50, 7);
+        SteppedBall ball = new SteppedBall(WIDTH / 2, HEIGHT / 2, 5, 9) ;
+        boolean reachedMaxSpeed = false ;
+        for (int tick = 0 ; tick < 5000 ; tick++) {
+            ball.step();
+            if (ball.x < 0 || ball.x > RIGHT_PADDLE_X) {
+                // Send it back the other way
+                ball.velX = -ball.velX ;
+            }
+            int before = paddle.getPositionY() ;
+            paddle.update(ball.x, ball.y, ball.velX, ball.velY);
+            int moved = Math.abs(paddle.getPositionY() - before) ;
+            assertTrue("Moved " + moved, moved <= 7);
+            reachedMaxSpeed |= moved == 7 ;
+        }
+        assertTrue(reachedMaxSpeed);
+    }
+
+    @Test
+    public void targetIsHeldForTheReactionDelay() {
+        PongAIPaddle paddle = new PongAIPaddle(RIGHT_PADDLE_X, PADDLE_HEIGHT, PITCH_WALL_MIN, PITCH_WALL_MAX, new Random(1)) ;
+        paddle.setDifficulty(10, 0, 5);
+        int start = paddle.getPositionY() ;
+        // Ball heading straight for the top of the pitch: the paddle sets off upwards
+        paddle.update(WIDTH / 2, 200, 5, 0);
+        assertEquals(start - 5, paddle.getPositionY());
+        // The ball is now heading for the bottom, but the paddle doesn't look again for another 9 timesteps
+        for (int tick = 1 ; tick < 10 ; tick++) {
+            paddle.update(WIDTH / 2, 900, 5, 0);
+            assertEquals(start - 5 * (tick + 1), paddle.getPositionY());
+        }
+        paddle.update(WIDTH / 2, 900, 5, 0);
+        assertEquals(start - 45, paddle.getPositionY());
+    }
+
+    @Test
+    public void aimingErrorIsBoundedByMaxError() {
+        Random random = new Random(426) ;
+        PongAIPaddle paddle = new PongAIPaddle(RIGHT_PADDLE_X, PADDLE_HEIGHT, PITCH_WALL_MIN, PITCH_WALL_MAX, random) ;
+        paddle.setDifficulty(1, 30, HEIGHT);
+        int smallest = 0 ;
+        int largest = 0 ;
+        for (int i = 0 ; i < 1000 ; i++) {
+            int ballY = PITCH_WALL_MIN + random.nextInt(PITCH_WALL_MAX - PITCH_WALL_MIN + 1) ;
+            int velY = random.nextInt(13) - 6 ;
+            paddle.update(WIDTH / 2, ballY, 5, velY);
+            int error = paddle.getPositionY() - PongAIPaddle.predictInterceptY(WIDTH / 2, ballY, 5, velY, RIGHT_PADDLE_X, PITCH_WALL_MIN, PITCH_WALL_MAX) ;
+            smallest = Math.min(smallest, error) ;
+            largest = Math.max(largest, error) ;
+        }
+        assertTrue("Error from " + smallest + " to " + largest, smallest >= -30 && largest <= 30);
+        assertTrue("Error from " + smallest + " to " + largest, smallest < -20 && largest > 20);
+    }
+
+    @Test
+    public void returnsToCentreWhenTheBallMovesAway() {
+        PongAIPaddle paddle = new PongAIPaddle(RIGHT_PADDLE_X, PADDLE_HEIGHT, PITCH_WALL_MIN, PITCH_WALL_MAX, new Random(2)) ;
+        paddle.setDifficulty(1, 0, HEIGHT);
+        paddle.setPositionY(100);
+        paddle.update(WIDTH / 2, 200, -5, 3);
+        assertEquals((PITCH_WALL_MIN + PITCH_WALL_MAX) / 2, paddle.getPositionY());
+    }
+
+    /**
+     * Headless self-play: one paddle on each side, using the game's geometry, wall band physics and
+     * flat paddles. A rally that nobody loses within rallyLimit timesteps is abandoned.
+     * @return  Index of the winning side: 0 for the left-hand paddle, 1 for the right, or -1 if nobody reached WINNING_SCORE.
+     */
+    private static int playMatch(int leftDifficulty, int rightDifficulty, Random random) {
+        final int rallyLimit = 10000 ;
+        PongAIPaddle left = new PongAIPaddle(LEFT_PADDLE_X, PADDLE_HEIGHT, PITCH_WALL_MIN, PITCH_WALL_MAX, random) ;
+        PongAIPaddle right = new PongAIPaddle(RIGHT_PADDLE_X, PADDLE_HEIGHT, PITCH_WALL_MIN, PITCH_WALL_MAX, random) ;
+        left.setDifficulty(leftDifficulty);
+        right.setDifficulty(rightDifficulty);
+        int[] scores = new int[2] ;
+        for (int rally = 0 ; rally < 20 && scores[0] < WINNING_SCORE && scores[1] < WINNING_SCORE ; rally++) {
+            // Serve from the centre spot, like PongBall.initialise()
+            double angle = (random.nextDouble() - 0.5) * Math.PI / 2 ;
+            int velX = (int) Math.round(5 * Math.cos(angle)) * (random.nextBoolean() ? 1 : -1) ;
+            SteppedBall ball = new SteppedBall(WIDTH / 2, HEIGHT / 2, velX, (int) Math.round(5 * Math.sin(angle))) ;
+            for (int tick = 0 ; tick < rallyLimit ; tick++) {
+                int previousX = ball.x ;
+                ball.step();
+                if (ball.velX > 0 && previousX < RIGHT_PADDLE_X && ball.x >= RIGHT_PADDLE_X
+                        && Math.abs(ball.y - right.getPositionY()) <= PADDLE_REACH) {
+                    ball.velX = -ball.velX ;
+                } else if (ball.velX < 0 && previousX > LEFT_PADDLE_X && ball.x <= LEFT_PADDLE_X
+                        && Math.abs(ball.y - left.getPositionY()) <= PADDLE_REACH) {
+                    ball.velX = -ball.velX ;
+                }
+                if (ball.x < 0) {
+                    scores[1]++ ;
+                    break ;
+                }
+                if (ball.x > WIDTH) {
+                    scores[0]++ ;
+                    break ;
+                }
+                left.update(ball.x, ball.y, ball.velX, ball.velY);
+                right.update(ball.x, ball.y, ball.velX, ball.velY);
+            }
+        }
+        if (scores[0] >= WINNING_SCORE) {
+            return 0 ;
+        }
+        return scores[1] >= WINNING_SCORE ? 1 : -1 ;
+    }
+
+    /**
+     * Method to play a number of matches, swapping sides each time.
+     * @return  Fraction of the matches won by the first difficulty.
+     */
+    private static double winRate(int difficulty, int opponentDifficulty, int matches, long seed) {
+        Random random = new Random(seed) ;
+        int wins = 0 ;
+        for (int match = 0 ; match < matches ; match++) {
+            if (match % 2 == 0) {
+                wins += playMatch(difficulty, opponentDifficulty, random) == 0 ? 1 : 0 ;
+            } else {
+                wins += playMatch(opponentDifficulty, difficulty, random) == 1 ? 1 : 0 ;
+            }
+        }
+        return (double) wins / matches ;
+    }
+
+    /**
+     * With the game's flat paddles, medium and hard aim well inside the paddle's reach and rarely miss, so
+     * their matches against each other are mostly abandoned. Both should beat easy, which aims up to a
+     * whole paddle height off.
+     */
+    @Test
+    public void harderPresetsBeatEasy() {
+        double hardVsEasy = winRate(PongAIPaddle.DIFFICULTY_HARD, PongAIPaddle.DIFFICULTY_EASY, 40, 526) ;
+        double mediumVsEasy = winRate(PongAIPaddle.DIFFICULTY_MEDIUM, PongAIPaddle.DIFFICULTY_EASY, 40, 626) ;
+        double easyVsEasy = winRate(PongAIPaddle.DIFFICULTY_EASY, PongAIPaddle.DIFFICULTY_EASY, 40, 726) ;
+        assertTrue("Hard beat easy in " + hardVsEasy, hardVsEasy >= 0.8);
+        assertTrue("Medium beat easy in " + mediumVsEasy, mediumVsEasy >= 0.7);
+        assertTrue("Easy beat easy in " + easyVsEasy, easyVsEasy > 0.2 && easyVsEasy < 0.8);
+    }
+}
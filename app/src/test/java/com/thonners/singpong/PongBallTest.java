@@ -0,0 +1,61 @@
+package com.thonners.singpong;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for PongBall's reflection of its velocity off walls, paddles and angled obstacles.
+ *
+ * @author Thonners
+ * @since 18/10/26
+ * @version 1.0
+ */
+public class PongBallTest {
+
+    @Test
+    public void wallAndPaddleReflectionsAreExact() {
+        int[] velocity = {3, -4} ;
+        PongBall.reflect(velocity, new double[]{0, 1}, 25);
+        assertEquals(3, velocity[0]);
+        assertEquals(4, velocity[1]);
+        PongBall.reflect(velocity, new double[]{-1, 0}, 25);
+        assertEquals(-3, velocity[0]);
+        assertEquals(4, velocity[1]);
+    }
+
+    @Test
+    public void obstacleReflectionsKeepTheSpeed() {
+        // Bounce a serve off a long run of randomly angled surfaces, as if rattling around a level of obstacles
+        Random random = new Random(27) ;
+        int[] velocity = {4, 3} ;
+        int speedSquared = 25 ;
+        for (int bounce = 0 ; bounce < 100000 ; bounce++) {
+            double angle = 2 * Math.PI * random.nextDouble() ;
+            double[] normal = {Math.cos(angle), Math.sin(angle)} ;
+            if (velocity[0] * normal[0] + velocity[1] * normal[1] > 0) {
+                // Obstacles only reflect a ball heading into them
+                normal[0] = -normal[0] ;
+                normal[1] = -normal[1] ;
+            }
+            PongBall.reflect(velocity, normal, speedSquared);
+            int reflectedSquared = velocity[0] * velocity[0] + velocity[1] * velocity[1] ;
+            // Speed 5 can't always be hit exactly with ints, but mustn't drift
+            assertTrue("Speed squared " + reflectedSquared + " after bounce " + bounce, Math.abs(reflectedSquared - speedSquared) <= 4);
+            assertTrue("No X velocity after bounce " + bounce, velocity[0] != 0);
+        }
+    }
+
+    @Test
+    public void neverLeavesTheBallWithNoXVelocity() {
+        // Reflecting (3, 4) off this normal gives exactly (0, -5)
+        double[] normal = {-1 / Math.sqrt(10), -3 / Math.sqrt(10)} ;
+        int[] velocity = {3, 4} ;
+        PongBall.reflect(velocity, normal, 25);
+        assertTrue(velocity[0] != 0);
+        assertEquals(-5, velocity[1]);
+    }
+}
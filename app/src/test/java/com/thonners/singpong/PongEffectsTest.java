@@ -0,0 +1,140 @@
+package com.thonners.singpong;
+
+import android.graphics.Canvas;
+import android.graphics.Paint;
+
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for PongEffects: the particle pool's cap, the trail, and that nothing is allocated once the
+ * effects are running. Drawing is done on a stub Canvas which records what it was asked to draw.
+ *
+ * @author Thonners
+ * @since 18/10/26
+ * @version 1.0
+ */
+public class PongEffectsTest {
+
+    private static final int BALL_RADIUS = 50 ;
+
+    /**
+     * Canvas which keeps the last batch of lines and the number of points drawn, rather than drawing them.
+     */
+    private static class StubCanvas extends Canvas {
+        float[] lines = new float[0] ;
+        int lineCount = 0 ;     // Number of floats in lines used by the last drawLines call, 0 if none this frame
+        int pointCount = 0 ;    // Number of floats passed to drawPoints this frame
+
+        void startFrame() {
+            lineCount = 0 ;
+            pointCount = 0 ;
+        }
+
+        @Override
+        public void drawLines(float[] pts, int offset, int count, Paint paint) {
+            lines = pts ;
+            lineCount = count ;
+        }
+
+        @Override
+        public void drawPoints(float[] pts, int offset, int count, Paint paint) {
+            pointCount += count ;
+        }
+    }
+
+    /**
+     * Method to return the bytes allocated so far by the current thread.
+     */
+    private static long allocatedBytes() {
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean() ;
+        return threads.getThreadAllocatedBytes(Thread.currentThread().getId()) ;
+    }
+
+    /**
+     * Method to run one frame of a rally: the ball moves, bounces every so often, and a goal is scored now and then.
+     */
+    private static void playFrame(PongEffects effects, StubCanvas canvas, int frame) {
+        float ballX = 100 + (frame * 7) % 1700 ;
+        float ballY = 100 + (frame * 3) % 800 ;
+        if (frame % 20 == 0) {
+            effects.addBounce(ballX, ballY, 5, -3);
+        }
+        if (frame % 300 == 0) {
+            effects.addGoalBurst(0, ballY);
+            effects.clearTrail();
+        }
+        effects.update();
+        effects.addTrailPoint(ballX, ballY);
+        canvas.startFrame();
+        effects.draw(canvas);
+    }
+
+    @Test
+    public void steadyStateAllocatesNothing() {
+        PongEffects effects = new PongEffects(BALL_RADIUS) ;
+        StubCanvas canvas = new StubCanvas() ;
+        // Warm up, so that class loading and compilation aren't counted
+        for (int frame = 0 ; frame < 20000 ; frame++) {
+            playFrame(effects, canvas, frame);
+        }
+        // Allow for anything allocated by the measurement itself
+        long calibration = allocatedBytes() ;
+        long overhead = allocatedBytes() - calibration ;
+        long before = allocatedBytes() ;
+        for (int frame = 0 ; frame < 10000 ; frame++) {
+            playFrame(effects, canvas, frame);
+        }
+        long allocated = allocatedBytes() - before - overhead ;
+        assertEquals("Bytes allocated over 10000 frames", 0, allocated);
+    }
+
+    @Test
+    public void particleCountIsCapped() {
+        PongEffects effects = new PongEffects(BALL_RADIUS) ;
+        for (int n = 0 ; n < 100 ; n++) {
+            effects.addGoalBurst(500, 500);
+            effects.addBounce(500, 500, 1, 0);
+        }
+        int live = effects.getLiveParticleCount() ;
+        assertTrue("Live particles: " + live, live > 0 && live <= 256);
+        // Every particle expires eventually, returning its slot to the pool
+        for (int frame = 0 ; frame < 100 ; frame++) {
+            effects.update();
+        }
+        assertEquals(0, effects.getLiveParticleCount());
+        effects.addGoalBurst(500, 500);
+        assertTrue(effects.getLiveParticleCount() > 0);
+    }
+
+    @Test
+    public void clearTrailDoesNotJoinOldAndNewPositions() {
+        PongEffects effects = new PongEffects(BALL_RADIUS) ;
+        StubCanvas canvas = new StubCanvas() ;
+        // Ball heads for the left-hand goal line
+        for (int n = 0 ; n < 10 ; n++) {
+            effects.addTrailPoint(50 - 5 * n, 300);
+        }
+        // Goal: burst on the goal line, and the ball is re-served from the centre spot
+        effects.addGoalBurst(0, 300);
+        effects.clearTrail();
+        effects.update();
+        effects.addTrailPoint(960, 540);
+        canvas.startFrame();
+        effects.draw(canvas);
+        assertEquals("Trail floats drawn with a single position", 0, canvas.lineCount);
+        assertTrue("Burst should survive clearTrail()", canvas.pointCount > 0);
+
+        effects.addTrailPoint(965, 541);
+        canvas.startFrame();
+        effects.draw(canvas);
+        assertEquals(4, canvas.lineCount);
+        for (int i = 0 ; i < canvas.lineCount ; i += 2) {
+            assertTrue("Trail point " + canvas.lines[i] + " isn't near the centre spot", canvas.lines[i] >= 960);
+        }
+    }
+}
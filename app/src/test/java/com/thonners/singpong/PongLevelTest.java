@@ -0,0 +1,198 @@
+package com.thonners.singpong;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Tests for PongLevel: parsing, the normals found by its spatial index, and the cost of compiling and querying it.
+ *
+ * @author Thonners
+ * @since 18/10/26
+ * @version 1.0
+ */
+public class PongLevelTest {
+
+    private static final int WIDTH = 1920 ;
+    private static final int HEIGHT = 1080 ;
+    private static final int BALL_RADIUS = 50 ;
+
+    @Test
+    public void loadsEveryShapeType() throws IOException {
+        PongLevel level = PongLevel.load(new StringReader(
+                "# Comment\n\ncircle 0.5 0.5 0.05\nreflector 0.2 0.2 0.3 0.3\npolygon 0.6 0.6 0.7 0.6 0.65 0.7\n")) ;
+        assertEquals(3, level.getShapeCount());
+    }
+
+    @Test(expected = IOException.class)
+    public void rejectsInvalidLine() throws IOException {
+        PongLevel.load(new StringReader("circle 0.5 0.5\n")) ;
+    }
+
+    @Test
+    public void circleNormalsPointOutwards() throws IOException {
+        PongLevel level = PongLevel.load(new StringReader("circle 0.5 0.5 0.05\n")) ;
+        assertTrue(level.compile(WIDTH, HEIGHT, BALL_RADIUS));
+        double centreX = 0.5 * WIDTH ;
+        double centreY = 0.5 * HEIGHT ;
+        double reach = 0.05 * HEIGHT + BALL_RADIUS ;
+        int obstacles = 0 ;
+        for (int i = 0 ; i < WIDTH ; i += 3) {
+            for (int j = 0 ; j < HEIGHT ; j += 3) {
+                double[] normal = level.getReflectionNormal(i, j) ;
+                double fromCentre = Math.hypot(i - centreX, j - centreY) ;
+                if (fromCentre > reach + 1) {
+                    assertNull("Obstacle at (" + i + ", " + j + ") is out of reach", normal);
+                } else if (fromCentre < reach - 1) {
+                    assertNotNull("No obstacle at (" + i + ", " + j + ")", normal);
+                    obstacles++ ;
+                    double dot = (i - centreX) * normal[0] + (j - centreY) * normal[1] ;
+                    assertTrue("Normal at (" + i + ", " + j + ") points into the circle", dot > 0 || fromCentre == 0);
+                    assertEquals(1.0, Math.hypot(normal[0], normal[1]), 1e-9);
+                }
+            }
+        }
+        assertTrue(obstacles > 0);
+    }
+
+    @Test
+    public void polygonNormalsPointOutwards() throws IOException {
+        // The same triangle, wound both ways
+        String[] levels = {"polygon 0.4 0.4 0.6 0.4 0.5 0.6\n", "polygon 0.5 0.6 0.6 0.4 0.4 0.4\n"} ;
+        for (String levelFile : levels) {
+            PongLevel level = PongLevel.load(new StringReader(levelFile)) ;
+            assertTrue(level.compile(WIDTH, HEIGHT, BALL_RADIUS));
+            double centroidX = 0.5 * WIDTH ;
+            double centroidY = (0.4 + 0.4 + 0.6) / 3 * HEIGHT ;
+            // Walk out from the centroid in each direction, checking the normal where the ball would first touch the triangle
+            for (int angle = 0 ; angle < 360 ; angle += 15) {
+                double dx = Math.cos(Math.toRadians(angle)) ;
+                double dy = Math.sin(Math.toRadians(angle)) ;
+                double[] touch = null ;
+                for (int r = 0 ; r < WIDTH ; r++) {
+                    int i = (int) Math.round(centroidX + r * dx) ;
+                    int j = (int) Math.round(centroidY + r * dy) ;
+                    if (i < 0 || j < 0 || i >= WIDTH || j >= HEIGHT) {
+                        break ;
+                    }
+                    double[] normal = level.getReflectionNormal(i, j) ;
+                    if (normal != null) {
+                        touch = normal.clone() ;
+                    }
+                }
+                assertNotNull(touch);
+                assertTrue("Normal at " + angle + " degrees points into the polygon", dx * touch[0] + dy * touch[1] > 0);
+            }
+        }
+    }
+
+    @Test
+    public void reflectorIsTwoSided() throws IOException {
+        PongLevel level = PongLevel.load(new StringReader("reflector 0.25 0.5 0.75 0.5\n")) ;
+        assertTrue(level.compile(WIDTH, HEIGHT, BALL_RADIUS));
+        double[] above = level.getReflectionNormal(WIDTH / 2, HEIGHT / 2 - BALL_RADIUS + 5) ;
+        assertEquals(0, above[0], 1e-9);
+        assertEquals(-1, above[1], 1e-9);
+        double[] below = level.getReflectionNormal(WIDTH / 2, HEIGHT / 2 + BALL_RADIUS - 5) ;
+        assertEquals(0, below[0], 1e-9);
+        assertEquals(1, below[1], 1e-9);
+        assertNull(level.getReflectionNormal(WIDTH / 2, HEIGHT / 2 + BALL_RADIUS + 5));
+    }
+
+    @Test
+    public void nearestOverlappingShapeWins() throws IOException {
+        // Two circles whose reaches overlap between them
+        PongLevel level = PongLevel.load(new StringReader("circle 0.45 0.5 0.02\ncircle 0.55 0.5 0.02\n")) ;
+        assertTrue(level.compile(WIDTH, HEIGHT, BALL_RADIUS));
+        double[] normal = level.getReflectionNormal((int) (0.45 * WIDTH + 0.02 * HEIGHT + 10), HEIGHT / 2) ;
+        assertEquals(1, normal[0], 1e-9);
+        normal = level.getReflectionNormal((int) (0.55 * WIDTH - 0.02 * HEIGHT - 10), HEIGHT / 2) ;
+        assertEquals(-1, normal[0], 1e-9);
+    }
+
+    @Test
+    public void interruptedCompileLeavesNoObstacles() throws IOException {
+        PongLevel level = PongLevel.load(new StringReader("circle 0.5 0.5 0.05\n")) ;
+        assertTrue(level.compile(WIDTH, HEIGHT, BALL_RADIUS));
+        Thread.currentThread().interrupt();
+        try {
+            assertFalse(level.compile(WIDTH, HEIGHT, BALL_RADIUS));
+        } finally {
+            Thread.interrupted() ;
+        }
+        assertNull(level.getReflectionNormal(WIDTH / 2, HEIGHT / 2));
+    }
+
+    /**
+     * Benchmark of compile() and getReflectionNormal() for levels of 10, 100 and 1000 small shapes (half
+     * circles, half triangles), on a 1920x1080 pitch. Queries are at random positions on the pitch, so
+     * their cost depends on how crowded the level is around the ball, rather than the number of shapes.
+     * Times are printed rather than asserted, as they depend on the machine.
+     * Skipped unless SINGPONG_BENCHMARKS is set, so it doesn't slow down the normal test run.
+     */
+    @Test
+    public void benchmarkCompileAndQuery() throws IOException {
+        assumeTrue("Set SINGPONG_BENCHMARKS=1 to run benchmarks", System.getenv("SINGPONG_BENCHMARKS") != null);
+        int[] shapeCounts = {10, 100, 1000} ;
+        int queries = 1000000 ;
+        for (int shapeCount : shapeCounts) {
+            PongLevel level = PongLevel.load(new StringReader(randomLevel(shapeCount, new Random(27)))) ;
+            assertEquals(shapeCount, level.getShapeCount());
+            // Warm up, then time the best of a few runs
+            long bestCompile = Long.MAX_VALUE ;
+            for (int run = 0 ; run < 20 ; run++) {
+                long start = System.nanoTime() ;
+                level.compile(WIDTH, HEIGHT, BALL_RADIUS);
+                bestCompile = Math.min(bestCompile, System.nanoTime() - start) ;
+            }
+            Random random = new Random(27) ;
+            int[] x = new int[queries] ;
+            int[] y = new int[queries] ;
+            for (int q = 0 ; q < queries ; q++) {
+                x[q] = random.nextInt(WIDTH) ;
+                y[q] = random.nextInt(HEIGHT) ;
+            }
+            long bestQueries = Long.MAX_VALUE ;
+            int contacts = 0 ;
+            for (int run = 0 ; run < 4 ; run++) {
+                contacts = 0 ;
+                long start = System.nanoTime() ;
+                for (int q = 0 ; q < queries ; q++) {
+                    if (level.getReflectionNormal(x[q], y[q]) != null) {
+                        contacts++ ;
+                    }
+                }
+                bestQueries = Math.min(bestQueries, System.nanoTime() - start) ;
+            }
+            System.out.println("PongLevel: " + shapeCount + " shapes compiled in " + bestCompile / 1000 + " us, queried in "
+                    + bestQueries / queries + " ns (" + contacts * 100 / queries + "% of the pitch touching an obstacle)");
+        }
+    }
+    /**
+     * Method to create a level file of small circles and triangles scattered over the pitch.
+     */
+    private static String randomLevel(int shapeCount, Random random) {
+        StringBuilder levelFile = new StringBuilder() ;
+        for (int s = 0 ; s < shapeCount ; s++) {
+            double x = 0.1 + 0.8 * random.nextDouble() ;
+            double y = 0.1 + 0.8 * random.nextDouble() ;
+            if (s % 2 == 0) {
+                levelFile.append("circle ").append(x).append(' ').append(y).append(" 0.02\n") ;
+            } else {
+                levelFile.append("polygon ").append(x).append(' ').append(y).append(' ')
+                        .append(x + 0.02).append(' ').append(y).append(' ')
+                        .append(x + 0.01).append(' ').append(y + 0.03).append('\n') ;
+            }
+        }
+        return levelFile.toString() ;
+    }
+}